@@ -0,0 +1,69 @@
+package io.customrealms.benchmarks;
+
+import io.customrealms.benchmarks.stub.BenchPlugin;
+import io.customrealms.benchmarks.stub.DiscardingLogger;
+import io.customrealms.benchmarks.stub.StubServer;
+import io.customrealms.runtime.Global;
+import io.customrealms.runtime.Logger;
+import io.customrealms.runtime.Runtime;
+import io.customrealms.runtime.RuntimeExecutor;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Value;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+/**
+ * BenchRuntime sets up a runtime the same way a bundle does, on the stub server
+ */
+public class BenchRuntime {
+    public final StubServer server;
+    public final BenchPlugin plugin;
+    public final Logger logger = new DiscardingLogger();
+    public final Runtime runtime;
+    public final RuntimeExecutor executor;
+
+    /**
+     * Creates a runtime on a shared engine. Must be called on the benchmark thread, which
+     * becomes the primary thread of the stub server.
+     * @param engine the engine to create the runtime on
+     */
+    public BenchRuntime(Engine engine) {
+        this.server = StubServer.install();
+        try {
+            this.plugin = new BenchPlugin(Files.createTempDirectory("customrealms-bench").toFile());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        this.runtime = new Runtime(engine);
+        this.executor = new RuntimeExecutor(this.plugin, this.runtime.getContext(), this.logger);
+    }
+
+    /**
+     * Initializes the runtime with the given globals
+     * @param globals the globals to insert into the runtime
+     */
+    public void init(Global... globals) {
+        this.runtime.init(globals);
+    }
+
+    /**
+     * Evaluates JavaScript code in the runtime
+     * @param script the JavaScript code
+     * @return the result of the code
+     */
+    public Value eval(String script) {
+        return this.runtime.getContext().eval("js", script);
+    }
+
+    /**
+     * Releases the runtime, and everything it registered on the stub server
+     */
+    public void release() {
+        this.executor.release();
+        this.runtime.release();
+        this.server.getScheduler().clear();
+        this.server.getPluginManager().clear();
+    }
+}
@@ -0,0 +1,63 @@
+package io.customrealms.benchmarks;
+
+import io.customrealms.runtime.Runtime;
+import io.customrealms.runtime.globals.Console;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures console.log, which joins its arguments with Console.joinLogArgs. The logger
+ * discards the output, so only the runtime's side is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsoleBenchmark {
+    private Engine engine;
+    private BenchRuntime bench;
+    private Value logString;
+    private Value logMixed;
+    private final UUID hostObject = UUID.randomUUID();
+
+    @Setup
+    public void setup() {
+        this.engine = Runtime.createEngine();
+        this.bench = new BenchRuntime(this.engine);
+        this.bench.init(new Console(this.bench.logger));
+        this.logString = this.bench.eval("() => console.log('player joined the game')");
+        this.logMixed = this.bench.eval("(player) => console.log('player', player, 'moved', 12.5, true, { x: 1 })");
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.bench.release();
+        this.engine.close();
+    }
+
+    @Benchmark
+    public void logString() {
+        this.logString.executeVoid();
+    }
+
+    @Benchmark
+    public void logMixedArgs() {
+        this.logMixed.executeVoid(this.hostObject);
+    }
+}
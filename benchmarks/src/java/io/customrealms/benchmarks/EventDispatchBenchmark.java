@@ -0,0 +1,67 @@
+package io.customrealms.benchmarks;
+
+import io.customrealms.benchmarks.stub.BenchEvent;
+import io.customrealms.runtime.Runtime;
+import io.customrealms.runtime.globals.BukkitEvents;
+import org.bukkit.event.EventException;
+import org.graalvm.polyglot.Engine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures dispatching a Bukkit event to JavaScript handlers registered with __events_register
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventDispatchBenchmark {
+    /**
+     * The number of JavaScript handlers registered for the event
+     */
+    @Param({ "1", "10", "100" })
+    public int handlers;
+
+    private Engine engine;
+    private BenchRuntime bench;
+    private BenchEvent event;
+
+    @Setup
+    public void setup() {
+        this.engine = Runtime.createEngine();
+        this.bench = new BenchRuntime(this.engine);
+        this.bench.init(new BukkitEvents(this.bench.plugin, this.bench.executor, this.bench.logger));
+        this.bench.eval(
+            "globalThis.total = 0;" +
+            "for (let i = 0; i < " + this.handlers + "; i++) {" +
+            "  __events_register('" + BenchEvent.class.getName() + "', e => { total += e.getValue(); });" +
+            "}"
+        );
+        this.event = new BenchEvent(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.bench.release();
+        this.engine.close();
+    }
+
+    @Benchmark
+    public void dispatch() throws EventException {
+        this.bench.server.getPluginManager().callEvent(this.event);
+    }
+}
@@ -0,0 +1,78 @@
+package io.customrealms.benchmarks;
+
+import io.customrealms.runtime.Runtime;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round-trip of functions created with RuntimeExecutor.promiseFunction: the call
+ * from JavaScript, the operation on a virtual thread, and the settlement on the primary thread
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromiseBenchmark {
+    /**
+     * The number of promises created at once, and awaited together
+     */
+    @Param({ "1", "100" })
+    public int burst;
+
+    private Engine engine;
+    private BenchRuntime bench;
+    private Value awaitBurst;
+    private ProxyExecutable done;
+    private volatile boolean settled;
+
+    @Setup
+    public void setup() {
+        this.engine = Runtime.createEngine();
+        this.bench = new BenchRuntime(this.engine);
+        this.bench.init();
+        this.bench.runtime.getContext().getBindings("js").putMember(
+            "operation",
+            this.bench.executor.promiseFunction("operation", args -> () -> 1)
+        );
+        this.awaitBurst = this.bench.eval(
+            "(count, done) => Promise.all(Array.from({ length: count }, () => operation())).then(() => done())"
+        );
+        this.done = args -> {
+            this.settled = true;
+            return null;
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.bench.release();
+        this.engine.close();
+    }
+
+    @Benchmark
+    public void roundTrip() {
+        this.settled = false;
+        this.bench.executor.executeSafely(() -> this.awaitBurst.executeVoid(this.burst, this.done));
+        while (!this.settled) {
+            this.bench.server.getScheduler().tick();
+            Thread.onSpinWait();
+        }
+    }
+}
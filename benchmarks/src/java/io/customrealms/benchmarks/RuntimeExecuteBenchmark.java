@@ -0,0 +1,71 @@
+package io.customrealms.benchmarks;
+
+import io.customrealms.runtime.Runtime;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating a runtime and executing a bundle in it. A cold start creates a new engine
+ * each time, like a server restart. A warm start creates the runtime on an engine that has
+ * already executed the same bundle, like an additional bundle on a shared engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RuntimeExecuteBenchmark {
+    /**
+     * The number of functions in the generated bundle
+     */
+    private static final int BUNDLE_FUNCTIONS = 2000;
+
+    private Source bundle;
+    private Engine engine;
+
+    @Setup
+    public void setup() {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < BUNDLE_FUNCTIONS; i++) {
+            code.append("function handler").append(i).append("(x) { return x * ").append(i).append(" + Math.sqrt(x); }\n");
+        }
+        code.append("let sum = 0; for (let i = 0; i < 1000; i++) sum += handler1(i);\n");
+        this.bundle = Source.newBuilder("js", code.toString(), "bundle.js").buildLiteral();
+        this.engine = Runtime.createEngine();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.engine.close();
+    }
+
+    @Benchmark
+    public void cold() {
+        Runtime runtime = new Runtime();
+        runtime.init();
+        runtime.execute(this.bundle);
+        runtime.release();
+    }
+
+    @Benchmark
+    public void warm() {
+        Runtime runtime = new Runtime(this.engine);
+        runtime.init();
+        runtime.execute(this.bundle);
+        runtime.release();
+    }
+}
@@ -0,0 +1,81 @@
+package io.customrealms.benchmarks;
+
+import io.customrealms.runtime.Runtime;
+import io.customrealms.runtime.globals.Scheduler;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the timer functions of the Scheduler global
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulerBenchmark {
+    /**
+     * The size of the bursts of timers
+     */
+    @State(Scope.Thread)
+    public static class Burst {
+        /**
+         * The number of timers that become due in the same tick
+         */
+        @Param({ "1", "100", "1000" })
+        public int timers;
+    }
+
+    private Engine engine;
+    private BenchRuntime bench;
+    private Value setAndClear;
+    private Value scheduleBurst;
+
+    @Setup
+    public void setup() {
+        this.engine = Runtime.createEngine();
+        this.bench = new BenchRuntime(this.engine);
+        this.bench.init(new Scheduler(this.bench.plugin, this.bench.executor, this.bench.logger));
+        this.bench.eval("globalThis.fired = 0; globalThis.onTimer = () => { fired++; };");
+        this.setAndClear = this.bench.eval("() => clearTimeout(setTimeout(onTimer, 1000))");
+        this.scheduleBurst = this.bench.eval("(count) => { for (let i = 0; i < count; i++) setTimeout(onTimer, 50); }");
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.bench.release();
+        this.engine.close();
+    }
+
+    /**
+     * Creates a timeout and clears it again, without it ever firing
+     */
+    @Benchmark
+    public void setAndClearTimeout() {
+        this.setAndClear.executeVoid();
+    }
+
+    /**
+     * Creates a burst of timeouts for the next tick, then advances the tick so they all fire
+     */
+    @Benchmark
+    public void fireDueTimers(Burst burst) {
+        this.scheduleBurst.executeVoid(burst.timers);
+        this.bench.server.getScheduler().tick();
+    }
+}
@@ -0,0 +1,33 @@
+package io.customrealms.benchmarks.stub;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * BenchEvent is an event fired by the benchmarks, so dispatch doesn't depend on any entities
+ */
+public class BenchEvent extends Event {
+    private static final HandlerList handlers = new HandlerList();
+
+    /**
+     * A value the JavaScript handlers can read
+     */
+    private final int value;
+
+    public BenchEvent(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return this.value;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
@@ -0,0 +1,24 @@
+package io.customrealms.benchmarks.stub;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+
+/**
+ * BenchPlugin is the Java plugin the runtime runs within during benchmarks. It is created with
+ * the initialization constructor Bukkit provides for use outside of a plugin class loader.
+ */
+public class BenchPlugin extends JavaPlugin {
+    @SuppressWarnings("deprecation")
+    public BenchPlugin(File dataFolder) {
+        super(
+            new JavaPluginLoader(Bukkit.getServer()),
+            new PluginDescriptionFile("CustomRealmsBench", "1.0.0", BenchPlugin.class.getName()),
+            dataFolder,
+            new File(dataFolder, "bench.jar")
+        );
+    }
+}
@@ -0,0 +1,13 @@
+package io.customrealms.benchmarks.stub;
+
+import io.customrealms.runtime.Logger;
+
+/**
+ * DiscardingLogger is a runtime logger that drops everything, so benchmarks don't measure
+ * console output
+ */
+public class DiscardingLogger implements Logger {
+    public void logUnhandledException(Exception ex) {}
+
+    public void log(LogType type, String value) {}
+}
@@ -0,0 +1,91 @@
+package io.customrealms.benchmarks.stub;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * StubPluginManager is a Bukkit plugin manager that only supports registering event executors,
+ * and calling the executors registered for an event class.
+ */
+public class StubPluginManager implements InvocationHandler {
+    /**
+     * A registered event executor
+     */
+    private static final class Registration {
+        final Listener listener;
+        final EventExecutor executor;
+
+        Registration(Listener listener, EventExecutor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * The registrations for each event class
+     */
+    private final HashMap<Class<?>, List<Registration>> registrations = new HashMap<>();
+
+    /**
+     * The proxy implementing the Bukkit interface
+     */
+    private Object proxy;
+
+    @SuppressWarnings("unchecked")
+    synchronized <T> T proxy(Class<T> type) {
+        if (this.proxy == null) {
+            this.proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, this);
+        }
+        return (T) this.proxy;
+    }
+
+    /**
+     * Calls all the executors registered for the class of an event
+     * @param event the event to call
+     */
+    public void callEvent(Event event) throws EventException {
+        List<Registration> list = this.registrations.get(event.getClass());
+        if (list == null) return;
+        for (int i = 0; i < list.size(); i++) {
+            Registration registration = list.get(i);
+            registration.executor.execute(registration.listener, event);
+        }
+    }
+
+    /**
+     * Gets the number of executors registered for an event class
+     * @param eventClass the event class
+     * @return the number of executors
+     */
+    public int getRegistrationCount(Class<? extends Event> eventClass) {
+        List<Registration> list = this.registrations.get(eventClass);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * Removes all the registrations
+     */
+    public void clear() {
+        this.registrations.clear();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("registerEvent")) {
+            this.registrations
+                .computeIfAbsent((Class<?>) args[0], key -> new ArrayList<>())
+                .add(new Registration((Listener) args[1], (EventExecutor) args[3]));
+            return null;
+        }
+        return StubServer.defaultValue(method.getReturnType());
+    }
+}
@@ -0,0 +1,161 @@
+package io.customrealms.benchmarks.stub;
+
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * StubScheduler is a Bukkit scheduler whose ticks are advanced manually. Tasks can be scheduled
+ * from any thread, and run on the thread calling tick().
+ */
+public class StubScheduler implements InvocationHandler {
+    /**
+     * A task scheduled on the stub scheduler
+     */
+    private static final class Task implements InvocationHandler {
+        final int id;
+        final Runnable runnable;
+        final long period;
+        long nextTick;
+        volatile boolean cancelled;
+
+        Task(int id, Runnable runnable, long nextTick, long period) {
+            this.id = id;
+            this.runnable = runnable;
+            this.nextTick = nextTick;
+            this.period = period;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getTaskId":
+                    return this.id;
+                case "cancel":
+                    this.cancelled = true;
+                    return null;
+                case "isCancelled":
+                    return this.cancelled;
+                case "isSync":
+                    return true;
+                default:
+                    return StubServer.defaultValue(method.getReturnType());
+            }
+        }
+    }
+
+    /**
+     * The scheduled tasks, in scheduling order
+     */
+    private final List<Task> tasks = new ArrayList<>();
+
+    /**
+     * The current tick
+     */
+    private long currentTick = 0;
+
+    /**
+     * The ID of the next task
+     */
+    private int nextId = 1;
+
+    /**
+     * The proxy implementing the Bukkit interface
+     */
+    private Object proxy;
+
+    @SuppressWarnings("unchecked")
+    synchronized <T> T proxy(Class<T> type) {
+        if (this.proxy == null) {
+            this.proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, this);
+        }
+        return (T) this.proxy;
+    }
+
+    /**
+     * Advances the scheduler by one tick, and runs the tasks that became due
+     */
+    public void tick() {
+        List<Task> due = new ArrayList<>();
+        synchronized (this) {
+            this.currentTick++;
+            Iterator<Task> iterator = this.tasks.iterator();
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+                if (task.cancelled) {
+                    iterator.remove();
+                } else if (task.nextTick <= this.currentTick) {
+                    due.add(task);
+                    if (task.period > 0) {
+                        task.nextTick = this.currentTick + task.period;
+                    } else {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+        for (Task task : due) {
+            if (!task.cancelled) task.runnable.run();
+        }
+    }
+
+    /**
+     * Gets the number of tasks waiting to run
+     * @return the number of tasks
+     */
+    public synchronized int getPendingTasks() {
+        return this.tasks.size();
+    }
+
+    /**
+     * Cancels all the scheduled tasks
+     */
+    public synchronized void clear() {
+        this.tasks.forEach(task -> task.cancelled = true);
+        this.tasks.clear();
+    }
+
+    private synchronized Task schedule(Runnable runnable, long delay, long period) {
+        Task task = new Task(this.nextId++, runnable, this.currentTick + Math.max(1, delay), period > 0 ? Math.max(1, period) : 0);
+        this.tasks.add(task);
+        return task;
+    }
+
+    private synchronized void cancel(int id) {
+        for (Task task : this.tasks) {
+            if (task.id == id) task.cancelled = true;
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        int count = args == null ? 0 : args.length;
+        Runnable runnable = count > 1 && args[1] instanceof Runnable ? (Runnable) args[1] : null;
+        switch (method.getName()) {
+            case "runTask":
+                return this.taskProxy(this.schedule(runnable, 0, 0));
+            case "runTaskLater":
+                return this.taskProxy(this.schedule(runnable, (Long) args[2], 0));
+            case "runTaskTimer":
+                return this.taskProxy(this.schedule(runnable, (Long) args[2], (Long) args[3]));
+            case "scheduleSyncDelayedTask":
+                return this.schedule(runnable, count > 2 ? (Long) args[2] : 0, 0).id;
+            case "scheduleSyncRepeatingTask":
+                return this.schedule(runnable, (Long) args[2], (Long) args[3]).id;
+            case "cancelTask":
+                this.cancel((Integer) args[0]);
+                return null;
+            default:
+                return StubServer.defaultValue(method.getReturnType());
+        }
+    }
+
+    private BukkitTask taskProxy(Task task) {
+        return (BukkitTask) Proxy.newProxyInstance(BukkitTask.class.getClassLoader(), new Class<?>[] { BukkitTask.class }, task);
+    }
+}
@@ -0,0 +1,106 @@
+package io.customrealms.benchmarks.stub;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.logging.Logger;
+
+/**
+ * StubServer is a minimal Bukkit server for running the runtime outside of Minecraft. It only
+ * implements what the runtime uses: the scheduler, the plugin manager, and the primary thread.
+ * Every other method of the server returns a default value.
+ */
+public class StubServer implements InvocationHandler {
+    /**
+     * The server installed as the Bukkit singleton
+     */
+    private static StubServer instance;
+
+    /**
+     * The scheduler of the server
+     */
+    private final StubScheduler scheduler = new StubScheduler();
+
+    /**
+     * The plugin manager of the server
+     */
+    private final StubPluginManager pluginManager = new StubPluginManager();
+
+    /**
+     * The logger of the server
+     */
+    private final Logger logger = Logger.getLogger("StubServer");
+
+    /**
+     * The thread treated as the server's primary thread
+     */
+    private volatile Thread primaryThread = Thread.currentThread();
+
+    private StubServer() {}
+
+    /**
+     * Installs the stub server as the Bukkit singleton, if it hasn't been already, and makes the
+     * calling thread its primary thread
+     * @return the installed server
+     */
+    public static synchronized StubServer install() {
+        if (instance == null) {
+            instance = new StubServer();
+            Bukkit.setServer((Server) Proxy.newProxyInstance(
+                Server.class.getClassLoader(),
+                new Class<?>[] { Server.class },
+                instance
+            ));
+        }
+        instance.primaryThread = Thread.currentThread();
+        return instance;
+    }
+
+    public StubScheduler getScheduler() {
+        return this.scheduler;
+    }
+
+    public StubPluginManager getPluginManager() {
+        return this.pluginManager;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getScheduler":
+                return this.scheduler.proxy(BukkitScheduler.class);
+            case "getPluginManager":
+                return this.pluginManager.proxy(PluginManager.class);
+            case "isPrimaryThread":
+                return Thread.currentThread() == this.primaryThread;
+            case "getLogger":
+                return this.logger;
+            case "getName":
+            case "getVersion":
+            case "getBukkitVersion":
+                return "stub";
+            default:
+                return StubServer.defaultValue(method.getReturnType());
+        }
+    }
+
+    /**
+     * Gets the default value of a type, for the methods that aren't implemented
+     */
+    static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) return null;
+        if (type == boolean.class) return false;
+        if (type == char.class) return '\0';
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0f;
+        if (type == double.class) return 0d;
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        return 0;
+    }
+}
@@ -0,0 +1,163 @@
+package io.customrealms;
+
+import io.customrealms.runtime.HeapTracker;
+import io.customrealms.runtime.LeakTracker;
+import io.customrealms.runtime.Profiler;
+import io.customrealms.runtime.RuntimeExecutor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+
+/**
+ * AdminCommand implements the /customrealms command, which reports on the bundles running in
+ * the plugin and reloads them
+ */
+public class AdminCommand implements CommandExecutor {
+    /**
+     * The default number of profiler entries to show per bundle
+     */
+    private static final int DEFAULT_PROFILE_LIMIT = 10;
+
+    /**
+     * The plugin hosting the bundles
+     */
+    private final MainPlugin plugin;
+
+    /**
+     * The bundles hosted by the plugin
+     */
+    private final List<Bundle> bundles;
+
+    public AdminCommand(MainPlugin plugin, List<Bundle> bundles) {
+        this.plugin = plugin;
+        this.bundles = bundles;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0) return false;
+        switch (args[0].toLowerCase()) {
+            case "profile":
+                return this.profile(sender, args);
+            case "reload":
+                return this.reload(sender);
+            case "leaks":
+                return this.leaks(sender, args);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reloads the bundles, and reports how long it took
+     */
+    private boolean reload(CommandSender sender) {
+        long elapsed = this.plugin.reloadBundles();
+        sender.sendMessage("Reloaded " + this.bundles.size() + " bundle(s) in " + elapsed + "ms.");
+        return true;
+    }
+
+    /**
+     * Shows the heap, followed by the live registrations in each bundle by site, largest first.
+     * The latest samples are refreshed first, so the report is current.
+     */
+    private boolean leaks(CommandSender sender, String[] args) {
+        int limit = DEFAULT_PROFILE_LIMIT;
+        if (args.length > 1) {
+            try {
+                limit = Integer.parseInt(args[1]);
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+            if (limit < 1) return false;
+        }
+
+        // The heap is shared by all the bundles
+        HeapTracker heapTracker = this.plugin.getHeapTracker();
+        heapTracker.refresh();
+        LeakTracker.Series heap = heapTracker.getHeap();
+        sender.sendMessage(String.format(
+            "Heap retained after GC: %.1fMB (%+.1fMB over the recent samples)%s",
+            heap.getCurrent() / (1024.0 * 1024.0),
+            heap.getChange() / (1024.0 * 1024.0),
+            heap.isGrowing() ? ", growing" : ""
+        ));
+
+        for (Bundle bundle : this.bundles) {
+            RuntimeExecutor executor = bundle.getExecutor();
+            if (executor == null) continue;
+            LeakTracker tracker = executor.getLeakTracker();
+            tracker.refresh();
+
+            sender.sendMessage(bundle.getName() + ":");
+            List<LeakTracker.Series> series = tracker.getSeries();
+            for (LeakTracker.Series entry : series.subList(0, Math.min(limit, series.size()))) {
+                sender.sendMessage(String.format(
+                    "  %s from %s: %d (%+d over the recent samples)%s",
+                    entry.kind,
+                    entry.site,
+                    entry.getCurrent(),
+                    entry.getChange(),
+                    entry.isGrowing() ? ", growing" : ""
+                ));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shows the handlers that took the most time in each bundle, or resets the statistics
+     */
+    private boolean profile(CommandSender sender, String[] args) {
+        if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+            this.bundles.forEach(bundle -> bundle.getExecutor().getProfiler().reset());
+            sender.sendMessage("Profiler statistics have been reset.");
+            return true;
+        }
+
+        int limit = DEFAULT_PROFILE_LIMIT;
+        if (args.length > 1) {
+            try {
+                limit = Integer.parseInt(args[1]);
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+            if (limit < 1) return false;
+        }
+
+        boolean budgetShown = false;
+        for (Bundle bundle : this.bundles) {
+            RuntimeExecutor executor = bundle.getExecutor();
+            if (executor == null) continue;
+
+            // The tick budget is shared by all the bundles
+            if (!budgetShown) {
+                budgetShown = true;
+                sender.sendMessage(executor.getTickBudget().getOverrunCount() + " tick budget overruns");
+            }
+            sender.sendMessage(String.format(
+                "%s: %d pending promise settlements (peak %d), %d watchdog interruptions",
+                bundle.getName(),
+                executor.getPendingSettlements(),
+                executor.getPeakPendingSettlements(),
+                executor.getWatchdog().getInterruptCount()
+            ));
+            List<Profiler.Entry> entries = executor.getProfiler().getEntries();
+            for (Profiler.Entry entry : entries.subList(0, Math.min(limit, entries.size()))) {
+                sender.sendMessage(String.format(
+                    "  %s: %d calls, %.2fms total, p50 %.2fms, p90 %.2fms, p99 %.2fms, max %.2fms",
+                    entry.getSite(),
+                    entry.getCount(),
+                    entry.getTotalNanos() / 1e6,
+                    entry.getPercentileNanos(50) / 1e6,
+                    entry.getPercentileNanos(90) / 1e6,
+                    entry.getPercentileNanos(99) / 1e6,
+                    entry.getMaxNanos() / 1e6
+                ));
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+package io.customrealms;
+
+import io.customrealms.runtime.Logger;
+import io.customrealms.runtime.Runtime;
+import io.customrealms.runtime.RuntimeExecutor;
+import io.customrealms.runtime.TickBudget;
+import io.customrealms.runtime.globals.BlockEdits;
+import io.customrealms.runtime.globals.BukkitCommands;
+import io.customrealms.runtime.globals.BukkitEvents;
+import io.customrealms.runtime.globals.ChunkQueries;
+import io.customrealms.runtime.globals.Console;
+import io.customrealms.runtime.globals.Files;
+import io.customrealms.runtime.globals.KeyValueStore;
+import io.customrealms.runtime.globals.Plugin;
+import io.customrealms.runtime.globals.Profiling;
+import io.customrealms.runtime.globals.Scheduler;
+import io.customrealms.runtime.globals.Snapshots;
+import io.customrealms.runtime.globals.Workers;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.io.FileSystem;
+
+import java.io.File;
+
+/**
+ * Bundle is a single JavaScript plugin bundle, running in its own isolated runtime. Several
+ * bundles can be hosted by the same MainPlugin on a shared polyglot engine.
+ */
+public class Bundle {
+    /**
+     * The MIME type of JavaScript sources evaluated as ES modules
+     */
+    private static final String MODULE_MIME_TYPE = "application/javascript+module";
+
+    /**
+     * The name of the bundle, used for the source name in stack traces
+     */
+    private final String name;
+
+    /**
+     * The JavaScript source code of the bundle
+     */
+    private final String sourceCode;
+
+    /**
+     * The file system ES modules are imported from, or null if the bundle is a plain script
+     */
+    private final FileSystem moduleFileSystem;
+
+    /**
+     * The JavaScript runtime for this bundle.
+     */
+    private Runtime runtime;
+
+    /**
+     * The runtime executor for this bundle.
+     */
+    private RuntimeExecutor executor;
+
+    /**
+     * Constructs a new bundle from its source code
+     * @param name the name of the bundle
+     * @param sourceCode the JavaScript source code of the bundle
+     */
+    public Bundle(String name, String sourceCode) {
+        this(name, sourceCode, null);
+    }
+
+    /**
+     * Constructs a new bundle whose source code is an ES module, which imports the other
+     * modules from the given file system as they are needed
+     * @param name the name of the bundle
+     * @param sourceCode the JavaScript source code of the entry module
+     * @param moduleFileSystem the file system modules are imported from
+     */
+    public Bundle(String name, String sourceCode, FileSystem moduleFileSystem) {
+        this.name = name;
+        this.sourceCode = sourceCode;
+        this.moduleFileSystem = moduleFileSystem;
+    }
+
+    /**
+     * Creates the runtime for the bundle on the shared engine, and executes the bundle
+     * @param plugin the Java plugin hosting the bundle
+     * @param engine the polyglot engine shared between all bundles
+     * @param logger the logger to use within the JavaScript runtime
+     * @param tickBudget the tick budget shared between all bundles
+     */
+    public void load(JavaPlugin plugin, Engine engine, Logger logger, TickBudget tickBudget) {
+        // Create the runtime as an isolated context on the shared engine
+        this.runtime = this.moduleFileSystem == null
+            ? new Runtime(engine)
+            : new Runtime(engine, this.moduleFileSystem);
+
+        // Create the runtime executor
+        this.executor = new RuntimeExecutor(plugin, this.runtime.getContext(), logger, tickBudget);
+        this.executor.setSettleBudget(plugin.getConfig().getInt("promise-settle-budget", 1000));
+        this.executor.setWatchdog(
+            plugin.getConfig().getLong("watchdog-ms", 2000),
+            plugin.getConfig().getBoolean("watchdog-disable", false)
+        );
+        this.executor.setLeakCheckInterval(plugin.getConfig().getLong("leak-check-seconds", 60));
+
+        // Initialize the runtime with the globals
+        this.runtime.init(
+            new BukkitCommands(plugin, this.executor),
+            new BukkitEvents(plugin, this.executor, logger),
+            new Scheduler(plugin, this.executor, logger),
+            new Console(logger),
+            new Plugin(plugin),
+            new Files(this.executor, plugin.getConfig().getLong("file-cache-mb", 0) * 1024 * 1024),
+            new KeyValueStore(this.executor, new File(new File(plugin.getDataFolder(), "kv"), this.name + ".log"), logger),
+            new Profiling(this.executor),
+            new Workers(plugin, this.executor, engine, logger),
+            new Snapshots(),
+            new BlockEdits(plugin, this.executor, logger, plugin.getConfig().getInt("block-edit-budget", 8192)),
+            new ChunkQueries(plugin, this.executor)
+        );
+
+        // Execute the source code
+        Source.Builder builder = Source.newBuilder("js", this.sourceCode, this.name);
+        if (this.moduleFileSystem != null) {
+            builder.mimeType(MODULE_MIME_TYPE);
+        }
+        Source source = builder.buildLiteral();
+        this.executor.executeSafely("load " + this.name, () -> this.runtime.execute(source));
+    }
+
+    /**
+     * Releases the runtime of the bundle. The shared engine is left open.
+     */
+    public void release() {
+        // Release the runtime first, so the globals flush their queued writes before the
+        // executor interrupts its threads
+        if (this.runtime != null) {
+            this.runtime.release();
+            this.runtime = null;
+        }
+
+        // Release the runtime executor
+        if (this.executor != null) {
+            this.executor.release();
+            this.executor = null;
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public RuntimeExecutor getExecutor() {
+        return this.executor;
+    }
+}
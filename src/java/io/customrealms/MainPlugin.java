@@ -1,18 +1,23 @@
 package io.customrealms;
 
 import io.customrealms.resource.Resource;
+import io.customrealms.resource.ResourceFileSystem;
+import io.customrealms.runtime.AsyncLogger;
 import io.customrealms.runtime.DefaultLogger;
+import io.customrealms.runtime.HeapTracker;
 import io.customrealms.runtime.Logger;
 import io.customrealms.runtime.Runtime;
-import io.customrealms.runtime.RuntimeExecutor;
-import io.customrealms.runtime.globals.BukkitCommands;
-import io.customrealms.runtime.globals.BukkitEvents;
-import io.customrealms.runtime.globals.Console;
-import io.customrealms.runtime.globals.Files;
-import io.customrealms.runtime.globals.Plugin;
-import io.customrealms.runtime.globals.Scheduler;
+import io.customrealms.runtime.TickBudget;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.graalvm.polyglot.Engine;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
@@ -21,59 +26,285 @@ import java.util.logging.Level;
  */
 public class MainPlugin extends JavaPlugin {
     /**
-     * The JavaScript runtime for this plugin.
+     * The directory within the plugin data folder containing additional bundles
      */
-    private Runtime runtime;
+    private static final String BUNDLES_DIRECTORY = "bundles";
 
     /**
-     * The runtime executor for this plugin.
+     * The entry module within the JAR file, which is loaded instead of plugin.js if it exists
      */
-    private RuntimeExecutor executor;
+    private static final String ENTRY_MODULE = "modules/main.mjs";
+
+    /**
+     * The polyglot engine shared by the runtimes of all bundles.
+     */
+    private Engine engine;
+
+    /**
+     * The JavaScript bundles hosted by this plugin.
+     */
+    private final ArrayList<Bundle> bundles = new ArrayList<>();
+
+    /**
+     * The asynchronous logger used by the bundles, if enabled
+     */
+    private AsyncLogger asyncLogger;
+
+    /**
+     * The file system of the JAR file that modules are imported from, if the plugin has modules
+     */
+    private ResourceFileSystem resourceFileSystem;
+
+    /**
+     * The logger used within the JavaScript runtimes
+     */
+    private Logger logger;
+
+    /**
+     * The time JavaScript callbacks may take per tick, shared by all the bundles
+     */
+    private TickBudget tickBudget;
+
+    /**
+     * The repeating task starting the tick budget over each tick, or null if it is unlimited
+     */
+    private BukkitTask tickBudgetTask;
+
+    /**
+     * Samples the heap shared by all the bundles, to report its growth
+     */
+    private HeapTracker heapTracker;
+
+    /**
+     * The repeating task sampling the heap, or null if it is only sampled on demand
+     */
+    private BukkitTask heapCheckTask;
 
     @Override
     public void onEnable() {
+        long startTime = System.nanoTime();
+
+        // Load the configuration, writing the defaults if there is none yet
+        this.saveDefaultConfig();
+
         // Create a logger instance that will be used within the JavaScript runtime
         Logger logger = new DefaultLogger(this.getLogger());
+        if (this.getConfig().getBoolean("async-logging", true)) {
+            this.asyncLogger = new AsyncLogger(
+                logger,
+                this.getConfig().getInt("log-buffer-size", 4096),
+                this.getConfig().getInt("log-rate-limit", 500)
+            );
+            logger = this.asyncLogger;
+        }
+        this.logger = logger;
+        this.tickBudget = new TickBudget(logger);
+        this.applyTickBudget();
+        this.heapTracker = new HeapTracker(logger);
+        this.applyHeapCheckInterval();
+
+        // Read the bundles from the JAR file and the data folder
+        this.bundles.addAll(this.readBundles());
+
+        // Create the engine shared by all the bundles
+        this.engine = Runtime.createEngine();
 
-        // Create the runtime
-        this.runtime = new Runtime();
+        // Create a runtime for each bundle and execute it
+        for (Bundle bundle : this.bundles) {
+            bundle.load(this, this.engine, logger, this.tickBudget);
+        }
+
+        // Register the administration command
+        this.getCommand("customrealms").setExecutor(new AdminCommand(this, this.bundles));
 
-        // Create the runtime executor
-        this.executor = new RuntimeExecutor(this, this.runtime.getContext(), logger);
+        // Report the startup time
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        this.getLogger().info("Loaded " + this.bundles.size() + " bundle(s) in " + elapsed + "ms");
+    }
 
-        // Initialize the runtime with the globals
-        this.runtime.init(
-            new BukkitCommands(this),
-            new BukkitEvents(this, this.executor, logger),
-            new Scheduler(this, this.executor),
-            new Console(logger),
-            new Plugin(this),
-            new Files(this.executor)
-        );
+    @Override
+    public void onDisable() {
+        // Release all the bundles
+        this.bundles.forEach(Bundle::release);
+        this.bundles.clear();
+        this.closeResourceFileSystem();
+
+        // Stop starting the tick budget over
+        if (this.tickBudgetTask != null) {
+            this.tickBudgetTask.cancel();
+            this.tickBudgetTask = null;
+        }
+
+        // Stop sampling the heap
+        if (this.heapCheckTask != null) {
+            this.heapCheckTask.cancel();
+            this.heapCheckTask = null;
+        }
+
+        // Close the shared engine, after all its contexts
+        if (this.engine != null) {
+            this.engine.close();
+            this.engine = null;
+        }
+
+        // Write the remaining logs
+        if (this.asyncLogger != null) {
+            this.asyncLogger.close();
+            this.asyncLogger = null;
+        }
+    }
+
+    /**
+     * Reloads all the bundles without restarting the server. The runtimes are released, which
+     * removes their event listeners, timers and commands, and the bundles are read again and
+     * executed in new runtimes on the same engine. The engine is kept warm, so unchanged code
+     * isn't parsed again.
+     * @return the time the reload took, in milliseconds
+     */
+    public long reloadBundles() {
+        long startTime = System.nanoTime();
+
+        // Release the runtimes of the current bundles
+        this.bundles.forEach(Bundle::release);
+        this.bundles.clear();
+        this.closeResourceFileSystem();
+
+        // Read the configuration and the bundles again
+        this.reloadConfig();
+        this.applyTickBudget();
+        this.applyHeapCheckInterval();
+        this.bundles.addAll(this.readBundles());
+
+        // Create a new runtime for each bundle on the kept-warm engine
+        for (Bundle bundle : this.bundles) {
+            bundle.load(this, this.engine, this.logger, this.tickBudget);
+        }
+
+        // Report the reload time
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        this.getLogger().info("Reloaded " + this.bundles.size() + " bundle(s) in " + elapsed + "ms");
+        return elapsed;
+    }
+
+    /**
+     * Sets the tick budget from the configuration. Deferrable work is carried over to the next
+     * tick once the budget is used up by the bundles together.
+     */
+    private void applyTickBudget() {
+        this.tickBudget.setBudgetNanos(TimeUnit.MILLISECONDS.toNanos(this.getConfig().getLong("tick-budget-ms", 20)));
+        if (this.tickBudget.isLimited() && this.tickBudgetTask == null) {
+            this.tickBudgetTask = this.getServer().getScheduler().runTaskTimer(this, this.tickBudget::reset, 0, 1);
+        } else if (!this.tickBudget.isLimited() && this.tickBudgetTask != null) {
+            this.tickBudgetTask.cancel();
+            this.tickBudgetTask = null;
+        }
+    }
+
+    /**
+     * Sets how often the heap is sampled from the configuration, on the same interval as the
+     * registrations of the bundles
+     */
+    private void applyHeapCheckInterval() {
+        if (this.heapCheckTask != null) {
+            this.heapCheckTask.cancel();
+            this.heapCheckTask = null;
+        }
+        long seconds = this.getConfig().getLong("leak-check-seconds", 60);
+        if (seconds > 0) {
+            this.heapCheckTask = this.getServer().getScheduler().runTaskTimer(this, this.heapTracker::sample, seconds * 20, seconds * 20);
+        }
+    }
+
+    /**
+     * Gets the tracker of the heap shared by all the bundles
+     * @return the heap tracker
+     */
+    public HeapTracker getHeapTracker() {
+        return this.heapTracker;
+    }
+
+    /**
+     * Reads the bundle from the JAR file, followed by the additional bundles from the data folder
+     * @return the list of bundles
+     */
+    private ArrayList<Bundle> readBundles() {
+        ArrayList<Bundle> result = new ArrayList<>();
 
         // Load the code bundled into the JAR file
+        Bundle jarBundle = this.readJarBundle();
+        if (jarBundle != null) {
+            result.add(jarBundle);
+        }
+
+        // Load any additional bundles from the data folder
+        result.addAll(this.loadDataFolderBundles());
+        return result;
+    }
+
+    /**
+     * Reads the bundle from the JAR file. If the JAR file has an entry module, the bundle
+     * imports it, and the modules are only read from the JAR file as they are imported.
+     * Otherwise the bundle is the plugin.js script.
+     * @return the bundle, or null if it couldn't be read
+     */
+    private Bundle readJarBundle() {
+        if (Resource.exists(ENTRY_MODULE)) {
+            try {
+                this.resourceFileSystem = new ResourceFileSystem(this.getFile());
+            } catch (IOException ex) {
+                this.getLogger().log(Level.SEVERE, "Failed to open the JAR file for modules: " + ex.getMessage());
+                return null;
+            }
+            return new Bundle(
+                "plugin.mjs",
+                "import \"/" + ENTRY_MODULE + "\";",
+                this.resourceFileSystem.getFileSystem()
+            );
+        }
+
         String sourceCode = new Resource("plugin.js").getStringContents();
         if (sourceCode == null) {
             this.getLogger().log(Level.SEVERE, "JavaScript source code has not been loaded!");
-            return;
+            return null;
         }
-
-        // Execute the source code
-        this.executor.executeSafely(() -> this.runtime.execute(sourceCode));
+        return new Bundle("plugin.js", sourceCode);
     }
 
-    @Override
-    public void onDisable() {
-        // Release the runtime executor
-        if (this.executor != null) {
-            this.executor.release();
-            this.executor = null;
+    /**
+     * Closes the file system modules are imported from, after the bundles using it are released
+     */
+    private void closeResourceFileSystem() {
+        if (this.resourceFileSystem == null) return;
+        try {
+            this.resourceFileSystem.close();
+        } catch (IOException ex) {
+            this.getLogger().log(Level.WARNING, "Failed to close the JAR file: " + ex.getMessage());
         }
+        this.resourceFileSystem = null;
+    }
+
+    /**
+     * Reads the additional bundles from the plugin data folder, in name order
+     * @return the list of bundles
+     */
+    private ArrayList<Bundle> loadDataFolderBundles() {
+        ArrayList<Bundle> result = new ArrayList<>();
+
+        // List the JavaScript files in the bundles directory
+        File directory = new File(this.getDataFolder(), BUNDLES_DIRECTORY);
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".js"));
+        if (files == null) return result;
+        Arrays.sort(files);
 
-        // Release the runtime
-        if (this.runtime != null) {
-            this.runtime.release();
-            this.runtime = null;
+        // Read each of the files
+        for (File file : files) {
+            try {
+                String sourceCode = java.nio.file.Files.readString(file.toPath(), StandardCharsets.UTF_8);
+                result.add(new Bundle(file.getName(), sourceCode));
+            } catch (IOException ex) {
+                this.getLogger().log(Level.SEVERE, "Failed to read bundle " + file.getName() + ": " + ex.getMessage());
+            }
         }
+        return result;
     }
 }
@@ -1,8 +1,8 @@
 package io.customrealms.resource;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 public class Resource {
 
@@ -45,25 +45,20 @@ public class Resource {
 
     }
 
-    private static String streamToString(InputStream inputStream) {
-
-        try {
-
-            // Create the result output stream
-            ByteArrayOutputStream result = new ByteArrayOutputStream();
-
-            // Create a buffer to load data into
-            byte[] buffer = new byte[1024];
-
-            // While we're pulling some data
-            int length;
-            while ((length = inputStream.read(buffer)) != -1) {
-                result.write(buffer, 0, length);
-            }
+    /**
+     * Checks if a resource file exists, without reading it
+     * @param filename the filename relative to the resources
+     * @return true if the resource exists
+     */
+    public static boolean exists(String filename) {
+        return Resource.class.getClassLoader().getResource(filename) != null;
+    }
 
-            // Convert it to a string
-            return result.toString("UTF-8");
+    private static String streamToString(InputStream inputStream) {
 
+        // Read the whole stream at once, rather than copying it through a small buffer
+        try (inputStream) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
         } catch (IOException ex) {
             ex.printStackTrace();
             return null;
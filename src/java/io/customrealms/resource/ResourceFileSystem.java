@@ -0,0 +1,51 @@
+package io.customrealms.resource;
+
+import org.graalvm.polyglot.io.FileSystem;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+
+/**
+ * ResourceFileSystem exposes the files of the plugin JAR to the JavaScript runtime, read-only,
+ * so that ES modules can be imported from it. Modules are only read from the archive when they
+ * are first imported.
+ */
+public class ResourceFileSystem implements Closeable {
+    /**
+     * The file system of the JAR archive
+     */
+    private final java.nio.file.FileSystem archive;
+
+    /**
+     * The read-only polyglot file system backed by the archive
+     */
+    private final FileSystem fileSystem;
+
+    /**
+     * Opens the file system of a JAR file
+     * @param jarFile the JAR file to open
+     * @throws IOException if the JAR file can't be opened
+     */
+    public ResourceFileSystem(File jarFile) throws IOException {
+        this.archive = FileSystems.newFileSystem(jarFile.toPath());
+        this.fileSystem = FileSystem.newReadOnlyFileSystem(FileSystem.newFileSystem(this.archive));
+    }
+
+    /**
+     * Gets the polyglot file system for the runtime contexts
+     * @return the read-only file system
+     */
+    public FileSystem getFileSystem() {
+        return this.fileSystem;
+    }
+
+    /**
+     * Closes the archive. Runtimes using the file system must be released first.
+     */
+    @Override
+    public void close() throws IOException {
+        this.archive.close();
+    }
+}
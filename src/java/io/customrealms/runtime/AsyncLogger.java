@@ -0,0 +1,248 @@
+package io.customrealms.runtime;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * AsyncLogger hands logs over to a background virtual thread, which writes them to another
+ * logger, so the primary thread never waits on console output. Logs are kept in a bounded
+ * buffer, and are dropped when the buffer is full or the rate limit is exceeded. Consecutive
+ * repeats of the same log are collapsed into a single line.
+ */
+public class AsyncLogger implements Logger {
+    /**
+     * A log waiting to be written
+     */
+    private static final class Entry {
+        final LogType type;
+        final String value;
+        final Exception exception;
+
+        Entry(LogType type, String value, Exception exception) {
+            this.type = type;
+            this.value = value;
+            this.exception = exception;
+        }
+
+        boolean isRepeatOf(Entry other) {
+            return other != null
+                && this.exception == null
+                && other.exception == null
+                && this.type == other.type
+                && this.value.equals(other.value);
+        }
+    }
+
+    /**
+     * How long the background thread waits for a new log before reporting repeats and drops
+     */
+    private static final long IDLE_MILLIS = 1000;
+
+    /**
+     * The longest time between reports of dropped logs while logs keep coming in
+     */
+    private static final long REPORT_MILLIS = 10000;
+
+    /**
+     * How long closing the logger waits for the buffer to be written
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The logger the logs are written to by the background thread
+     */
+    private final Logger delegate;
+
+    /**
+     * The bounded ring buffer of logs waiting to be written
+     */
+    private final ArrayBlockingQueue<Entry> buffer;
+
+    /**
+     * The maximum number of logs accepted per second, or 0 for no limit
+     */
+    private final int rateLimit;
+
+    /**
+     * The start of the current rate limit window, and the logs accepted within it. Only
+     * accessed while synchronized on the logger.
+     */
+    private long windowStart = 0;
+    private int windowCount = 0;
+
+    /**
+     * The number of logs dropped because of the rate limit or a full buffer
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The number of dropped logs already reported in the log
+     */
+    private long reportedDropped = 0;
+
+    /**
+     * The background thread writing the logs
+     */
+    private final Thread writer;
+
+    /**
+     * Whether the logger has been closed
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a new async logger, and starts its background thread
+     * @param delegate the logger to write the logs to
+     * @param capacity the number of logs that can wait to be written
+     * @param rateLimit the maximum number of logs accepted per second, or 0 for no limit
+     */
+    public AsyncLogger(Logger delegate, int capacity, int rateLimit) {
+        this.delegate = delegate;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.rateLimit = Math.max(0, rateLimit);
+        this.writer = Thread.ofVirtual().name("customrealms-logger").start(this::write);
+    }
+
+    public void logUnhandledException(Exception ex) {
+        this.enqueue(new Entry(LogType.ERROR, null, ex));
+    }
+
+    public void log(LogType type, String value) {
+        this.enqueue(new Entry(type, value, null));
+    }
+
+    /**
+     * Logs a value, only building it once the log is within the rate limit, so a flood of logs
+     * that are dropped costs no formatting
+     * @param type the type of log: log, warning, error
+     * @param value builds the value to log
+     */
+    public void log(LogType type, Supplier<String> value) {
+        if (!this.delegate.isEnabled(type)) return;
+        if (this.closed || !this.acquire()) {
+            this.dropped.incrementAndGet();
+            return;
+        }
+        if (!this.buffer.offer(new Entry(type, value.get(), null))) {
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Checks if logs of the given type are output at the current level. Logs over the rate
+     * limit are still passed to the logger, so that they are counted as dropped.
+     * @param type the type of log: log, warning, error
+     * @return true if the log would be output
+     */
+    public boolean isEnabled(LogType type) {
+        return this.delegate.isEnabled(type);
+    }
+
+    /**
+     * Gets the number of logs that have been dropped
+     * @return the drop counter
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Stops accepting logs, and waits for the logs in the buffer to be written
+     */
+    public void close() {
+        this.closed = true;
+        this.writer.interrupt();
+        try {
+            this.writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds a log to the buffer, unless it is rate limited or the buffer is full
+     */
+    private void enqueue(Entry entry) {
+        if (this.closed || !this.acquire() || !this.buffer.offer(entry)) {
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a log against the rate limit
+     * @return true if the log is within the limit
+     */
+    private synchronized boolean acquire() {
+        if (this.rateLimit == 0) return true;
+        long now = System.nanoTime();
+        if (this.isNewWindow(now)) {
+            this.windowStart = now;
+            this.windowCount = 0;
+        }
+        if (this.windowCount >= this.rateLimit) return false;
+        this.windowCount++;
+        return true;
+    }
+
+    private boolean isNewWindow(long now) {
+        return this.windowStart == 0 || now - this.windowStart >= TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Writes the logs from the buffer until the logger is closed and the buffer is empty
+     */
+    private void write() {
+        Entry previous = null;
+        int repeats = 0;
+        long lastReport = System.nanoTime();
+        while (true) {
+            Entry entry;
+            try {
+                entry = this.closed ? this.buffer.poll() : this.buffer.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                // Closing interrupts the wait, after which the rest of the buffer is written
+                continue;
+            }
+
+            // Collapse consecutive repeats of the same log
+            if (entry != null && entry.isRepeatOf(previous)) {
+                repeats++;
+                continue;
+            }
+            if (repeats > 0) {
+                this.delegate.log(previous.type, "(previous message repeated " + repeats + " more times)");
+                repeats = 0;
+            }
+
+            // Report the logs that were dropped since the last report while idle, and at
+            // regular intervals during a flood that never leaves the logger idle
+            long now = System.nanoTime();
+            if (entry == null || now - lastReport >= TimeUnit.MILLISECONDS.toNanos(REPORT_MILLIS)) {
+                this.reportDropped();
+                lastReport = now;
+            }
+            if (entry == null) {
+                previous = null;
+                if (this.closed) return;
+                continue;
+            }
+
+            if (entry.exception != null) {
+                this.delegate.logUnhandledException(entry.exception);
+            } else {
+                this.delegate.log(entry.type, entry.value);
+            }
+            previous = entry;
+        }
+    }
+
+    private void reportDropped() {
+        long total = this.dropped.get();
+        if (total > this.reportedDropped) {
+            this.delegate.log(LogType.WARNING, "Dropped " + (total - this.reportedDropped) + " log messages (" + total + " in total)");
+            this.reportedDropped = total;
+        }
+    }
+}
@@ -32,15 +32,29 @@ public class DefaultLogger implements Logger {
      * @param value the String value to log
      */
     public void log(LogType type, String value) {
+        this.underlying_logger.log(DefaultLogger.levelOf(type), value);
+    }
+
+    /**
+     * Checks if the underlying logger outputs logs of the given type
+     * @param type the type of log: log, warning, error
+     * @return true if the log would be output
+     */
+    public boolean isEnabled(LogType type) {
+        return this.underlying_logger.isLoggable(DefaultLogger.levelOf(type));
+    }
+
+    /**
+     * Gets the underlying logger level for a type of log
+     */
+    private static Level levelOf(LogType type) {
         switch (type) {
             case WARNING:
-                this.underlying_logger.log(Level.WARNING, value);
-                break;
-            case LOG:
-                this.underlying_logger.log(Level.INFO, value);
-                break;
+                return Level.WARNING;
             case ERROR:
-                this.underlying_logger.log(Level.SEVERE, value);
+                return Level.SEVERE;
+            default:
+                return Level.INFO;
         }
     }
 
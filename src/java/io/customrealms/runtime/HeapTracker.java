@@ -0,0 +1,66 @@
+package io.customrealms.runtime;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * HeapTracker samples the heap retained after garbage collection. The heap is shared by all the
+ * bundles, and the rest of the server, so its growth over consecutive samples is only reported
+ * as an indication of a leak, to be narrowed down with the registrations of each bundle.
+ */
+public class HeapTracker {
+    /**
+     * The logger to report the growth of the heap to
+     */
+    private final Logger logger;
+
+    /**
+     * The series of the heap retained after garbage collection, in bytes
+     */
+    private final LeakTracker.Series heap = new LeakTracker.Series("heap", "retained after GC");
+
+    public HeapTracker(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Takes a sample of the heap, and reports it if it has grown over each of the last samples
+     */
+    public void sample() {
+        this.heap.add(HeapTracker.retainedHeap(), false);
+        LeakTracker.check(this.logger, this.heap, (this.heap.getCurrent() / (1024 * 1024)) + "MB");
+    }
+
+    /**
+     * Updates the latest sample with the current heap, without adding to the history
+     */
+    public void refresh() {
+        this.heap.add(HeapTracker.retainedHeap(), true);
+    }
+
+    /**
+     * Gets the series of the heap retained after garbage collection, in bytes
+     * @return the heap series
+     */
+    public LeakTracker.Series getHeap() {
+        return this.heap;
+    }
+
+    /**
+     * Gets the heap retained after the last garbage collection, which grows with leaks but not
+     * with garbage. Falls back to the heap in use if the collector doesn't report it.
+     * @return the retained heap in bytes
+     */
+    private static long retainedHeap() {
+        long retained = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null) retained += usage.getUsed();
+        }
+        if (retained > 0) return retained;
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,206 @@
+package io.customrealms.runtime;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * LeakTracker samples the live registrations of the runtime, such as event handlers, timers and
+ * pending promises, by the site that created them. Counts that keep growing over consecutive
+ * samples are reported as likely leaks.
+ */
+public class LeakTracker {
+    /**
+     * The count of one kind of registration from one site, over the recent samples
+     */
+    public static final class Series {
+        /**
+         * The kind of registration, such as "event handlers"
+         */
+        public final String kind;
+
+        /**
+         * The site the registrations were created at
+         */
+        public final String site;
+
+        /**
+         * The recent samples, oldest first
+         */
+        private final long[] samples = new long[HISTORY];
+
+        /**
+         * The number of samples taken, up to the history size
+         */
+        private int size = 0;
+
+        /**
+         * Whether the growth of the series has been reported
+         */
+        private boolean warned = false;
+
+        Series(String kind, String site) {
+            this.kind = kind;
+            this.site = site;
+        }
+
+        void add(long sample, boolean replace) {
+            if (replace && this.size > 0) {
+                this.samples[this.size - 1] = sample;
+                return;
+            }
+            if (this.size == HISTORY) {
+                System.arraycopy(this.samples, 1, this.samples, 0, HISTORY - 1);
+                this.size--;
+            }
+            this.samples[this.size++] = sample;
+        }
+
+        /**
+         * Gets the latest sample
+         */
+        public long getCurrent() {
+            return this.size == 0 ? 0 : this.samples[this.size - 1];
+        }
+
+        /**
+         * Gets the change between the oldest and the latest sample in the history
+         */
+        public long getChange() {
+            return this.size == 0 ? 0 : this.samples[this.size - 1] - this.samples[0];
+        }
+
+        /**
+         * Checks if the series grew over each of the last samples
+         */
+        public boolean isGrowing() {
+            if (this.size < GROWTH_SAMPLES) return false;
+            for (int i = this.size - GROWTH_SAMPLES + 1; i < this.size; i++) {
+                if (this.samples[i] <= this.samples[i - 1]) return false;
+            }
+            return true;
+        }
+
+        private boolean isEmpty() {
+            for (int i = 0; i < this.size; i++) {
+                if (this.samples[i] != 0) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The number of samples kept for each series
+     */
+    private static final int HISTORY = 30;
+
+    /**
+     * The number of consecutive samples a series must grow over to be reported
+     */
+    private static final int GROWTH_SAMPLES = 5;
+
+    /**
+     * The logger to report growing series to
+     */
+    private final Logger logger;
+
+    /**
+     * The functions counting the live registrations of each kind by site, by kind
+     */
+    private final LinkedHashMap<String, Supplier<Map<String, Integer>>> counters = new LinkedHashMap<>();
+
+    /**
+     * The series of registration counts, by kind and site
+     */
+    private final LinkedHashMap<String, Series> series = new LinkedHashMap<>();
+
+    public LeakTracker(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Adds a kind of registration to track. Counters are called on the primary thread.
+     * @param kind the kind of registration, such as "event handlers"
+     * @param counter counts the live registrations by the site that created them
+     */
+    public void track(String kind, Supplier<Map<String, Integer>> counter) {
+        this.counters.put(kind, counter);
+    }
+
+    /**
+     * Takes a sample of all the tracked registrations, and reports the series that
+     * have grown over each of the last samples. Must be called on the primary thread.
+     */
+    public void sample() {
+        this.record(false);
+    }
+
+    /**
+     * Updates the latest sample with the current counts, without adding to the history, so a
+     * report can be current without affecting the growth of the series. Must be called on the
+     * primary thread.
+     */
+    public void refresh() {
+        this.record(true);
+    }
+
+    /**
+     * Counts the tracked registrations, and reports the growing series
+     * @param replace whether to replace the latest sample rather than add a new one
+     */
+    private void record(boolean replace) {
+        // Count the registrations, recording sites that are gone as zero
+        LinkedHashMap<String, Long> counts = new LinkedHashMap<>();
+        for (String key : this.series.keySet()) {
+            counts.put(key, 0L);
+        }
+        for (Map.Entry<String, Supplier<Map<String, Integer>>> counter : this.counters.entrySet()) {
+            String kind = counter.getKey();
+            for (Map.Entry<String, Integer> count : counter.getValue().get().entrySet()) {
+                String key = kind + "\u0000" + count.getKey();
+                this.series.computeIfAbsent(key, k -> new Series(kind, count.getKey()));
+                counts.merge(key, (long) count.getValue(), Long::sum);
+            }
+        }
+
+        // Record the samples, and drop the series of sites that are gone for good
+        Iterator<Map.Entry<String, Series>> iterator = this.series.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Series series = iterator.next().getValue();
+            series.add(counts.getOrDefault(series.kind + "\u0000" + series.site, 0L), replace);
+            if (series.isEmpty()) {
+                iterator.remove();
+                continue;
+            }
+            if (!replace) LeakTracker.check(this.logger, series, Long.toString(series.getCurrent()));
+        }
+    }
+
+    /**
+     * Reports a series the first time it is found growing, and again once it grows after
+     * having stopped
+     */
+    static void check(Logger logger, Series series, String current) {
+        boolean growing = series.isGrowing();
+        if (growing && !series.warned) {
+            logger.log(
+                Logger.LogType.WARNING,
+                "Possible leak: " + series.kind + " from " + series.site + " grew over the last " + GROWTH_SAMPLES + " samples, to " + current
+            );
+        }
+        series.warned = growing;
+    }
+
+    /**
+     * Gets the series of the registrations, largest first
+     * @return the series
+     */
+    public List<Series> getSeries() {
+        List<Series> result = new ArrayList<>(this.series.values());
+        result.sort((a, b) -> Long.compare(b.getCurrent(), a.getCurrent()));
+        return result;
+    }
+}
@@ -1,5 +1,7 @@
 package io.customrealms.runtime;
 
+import java.util.function.Supplier;
+
 public interface Logger {
 
     /**
@@ -24,5 +26,26 @@ public interface Logger {
      * @param value the String value to log
      */
     void log(LogType type, String value);
-    
+
+    /**
+     * Logs a value from a JS plugin runtime, only building it if the log would be output
+     * @param type the type of log this is: log, warning, error
+     * @param value builds the String value to log
+     */
+    default void log(LogType type, Supplier<String> value) {
+        if (this.isEnabled(type)) {
+            this.log(type, value.get());
+        }
+    }
+
+    /**
+     * Checks if a log of the given type would currently be output. Callers can use this to skip
+     * formatting a log value that would be discarded anyway.
+     * @param type the type of log: log, warning, error
+     * @return true if the log would be output
+     */
+    default boolean isEnabled(LogType type) {
+        return true;
+    }
+
 }
@@ -0,0 +1,160 @@
+package io.customrealms.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Profiler records the invocation count and latency of the JavaScript callbacks in a runtime,
+ * per registration site. Latencies are kept in fixed-bucket histograms, so recording an
+ * invocation doesn't allocate. The profiler must only be used on the primary thread.
+ */
+public class Profiler {
+    /**
+     * The latency statistics of a single registration site
+     */
+    public static final class Entry {
+        /**
+         * The number of sub-buckets each power of two is divided into, as a power of two
+         */
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        /**
+         * The number of buckets, covering latencies up to about 2^40 microseconds
+         */
+        private static final int BUCKET_COUNT = 40 * SUB_BUCKETS;
+
+        /**
+         * The registration site the entry is for
+         */
+        private final String site;
+
+        /**
+         * The number of invocations in each latency bucket, measured in microseconds
+         */
+        private final long[] buckets = new long[BUCKET_COUNT];
+
+        private long count = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+
+        private Entry(String site) {
+            this.site = site;
+        }
+
+        /**
+         * Records an invocation
+         * @param nanos the time the invocation took, in nanoseconds
+         */
+        public void record(long nanos) {
+            this.count++;
+            this.totalNanos += nanos;
+            if (nanos > this.maxNanos) this.maxNanos = nanos;
+            this.buckets[Entry.bucketOf(nanos / 1000)]++;
+        }
+
+        /**
+         * Gets the bucket of a latency. Each power of two is split into equal sub-buckets, so
+         * the relative error of a bucket is at most 25%.
+         */
+        private static int bucketOf(long micros) {
+            if (micros < SUB_BUCKETS) return (int) Math.max(0, micros);
+            int msb = 63 - Long.numberOfLeadingZeros(micros);
+            int index = (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((micros >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+            return Math.min(index, BUCKET_COUNT - 1);
+        }
+
+        /**
+         * Gets the highest latency that falls in a bucket, in microseconds
+         */
+        private static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int msb = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (msb - SUB_BUCKET_BITS);
+            return lower + (1L << (msb - SUB_BUCKET_BITS)) - 1;
+        }
+
+        /**
+         * Estimates a latency percentile from the histogram
+         * @param percentile the percentile, between 0 and 100
+         * @return the latency in nanoseconds, or 0 if there were no invocations
+         */
+        public long getPercentileNanos(double percentile) {
+            if (this.count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(this.count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += this.buckets[i];
+                if (seen >= rank) {
+                    return Math.min(this.maxNanos, (Entry.upperBoundOf(i) + 1) * 1000);
+                }
+            }
+            return this.maxNanos;
+        }
+
+        public String getSite() {
+            return this.site;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public long getTotalNanos() {
+            return this.totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return this.maxNanos;
+        }
+
+        public long getMeanNanos() {
+            return this.count == 0 ? 0 : this.totalNanos / this.count;
+        }
+
+        private void reset() {
+            Arrays.fill(this.buckets, 0);
+            this.count = 0;
+            this.totalNanos = 0;
+            this.maxNanos = 0;
+        }
+    }
+
+    /**
+     * The entries, associated to their registration site
+     */
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Gets the entry for a registration site, creating it if it doesn't exist yet. Callers on
+     * hot paths should hold on to the entry instead of looking it up for each invocation.
+     * @param site describes the registration, such as the event class and handler location
+     * @return the entry
+     */
+    public Entry entry(String site) {
+        return this.entries.computeIfAbsent(site, Entry::new);
+    }
+
+    /**
+     * Gets the entries that have recorded invocations, ordered by total time, highest first
+     * @return the entries
+     */
+    public List<Entry> getEntries() {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : this.entries.values()) {
+            if (entry.count > 0) result.add(entry);
+        }
+        result.sort(Comparator.comparingLong(Entry::getTotalNanos).reversed());
+        return result;
+    }
+
+    /**
+     * Clears the statistics of all the entries
+     */
+    public void reset() {
+        this.entries.values().forEach(Entry::reset);
+    }
+}
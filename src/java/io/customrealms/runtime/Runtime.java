@@ -1,12 +1,38 @@
 package io.customrealms.runtime;
 
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.io.FileSystem;
+import org.graalvm.polyglot.io.IOAccess;
 import java.util.ArrayList;
 import java.util.Arrays;
 
 public class Runtime {
+    /**
+     * Provides a Nashorn-style Java.resolve helper for existing scripts. This is a single
+     * Source instance so that contexts on a shared engine reuse its parsed code.
+     */
+    private static final Source JAVA_RESOLVE_SHIM = Source.create(
+        "js",
+        "if (typeof Java !== 'undefined' && typeof Java.resolve === 'undefined') { Java.resolve = Java.type; }"
+    );
+
+    /**
+     * The host access configuration for the runtime. Contexts on a shared engine must use the
+     * same HostAccess instance.
+     */
+    private static final HostAccess HOST_ACCESS = HostAccess.newBuilder(HostAccess.ALL)
+        .targetTypeMapping(
+            Double.class,
+            Float.class,
+            d -> d >= -Float.MAX_VALUE && d <= Float.MAX_VALUE,
+            Double::floatValue
+        )
+        .build();
+
     /**
      * The GraalVM JavaScript context
      */
@@ -18,28 +44,75 @@ public class Runtime {
     private final ArrayList<Global> globals = new ArrayList<>();
 
     /**
-     * Constructs a new Runtime instance with the given globals
+     * Creates a polyglot engine that can be shared between several runtimes. Contexts on the
+     * same engine share parsed code and compilation profiles, but not any JavaScript state.
+     * @return the new engine, which must be closed by the caller after all its runtimes
+     */
+    public static Engine createEngine() {
+        return Engine.newBuilder("js")
+                .allowExperimentalOptions(true)
+                .option("engine.WarnInterpreterOnly", "false")
+                .build();
+    }
+
+    /**
+     * Constructs a new Runtime instance with its own polyglot engine
      */
     public Runtime() {
-        // Configure the host access for the runtime
-        HostAccess hostAccess = HostAccess.newBuilder(HostAccess.ALL)
-            .targetTypeMapping(
-                Double.class,
-                Float.class,
-                d -> d >= -Float.MAX_VALUE && d <= Float.MAX_VALUE,
-                Double::floatValue
-            )
-            .build();
+        this.context = Runtime.contextBuilder()
+                .option("engine.WarnInterpreterOnly", "false")
+                .build();
+    }
 
-        // Create the GraalVM JavaScript runtime
-        this.context = Context.newBuilder("js")
+    /**
+     * Constructs a new Runtime instance as an isolated context on a shared polyglot engine
+     * @param engine the engine to create the context on
+     */
+    public Runtime(Engine engine) {
+        this.context = Runtime.contextBuilder()
+                .engine(engine)
+                .build();
+    }
+
+    /**
+     * Constructs a new Runtime instance on a shared polyglot engine, which imports ES modules
+     * from the given file system
+     * @param engine the engine to create the context on
+     * @param moduleFileSystem the file system modules are imported from
+     */
+    public Runtime(Engine engine, FileSystem moduleFileSystem) {
+        this.context = Runtime.contextBuilder()
+                .engine(engine)
+                .allowIO(IOAccess.newBuilder().fileSystem(moduleFileSystem).build())
+                .build();
+    }
+
+    /**
+     * Creates a bare context on a shared engine, for running code off the primary thread.
+     * Java classes can't be looked up from the context, so the code can't reach server state.
+     * @param engine the engine to create the context on
+     * @return the new context, which must be closed by the caller
+     */
+    public static Context createWorkerContext(Engine engine) {
+        return Context.newBuilder("js")
+                .engine(engine)
                 .allowExperimentalOptions(true)
-                .allowHostAccess(hostAccess)
-                .allowHostClassLookup(className -> true)
-                .option("engine.WarnInterpreterOnly", "false")
+                .allowHostAccess(HOST_ACCESS)
                 .build();
     }
 
+    /**
+     * Creates the context builder with the options common to every runtime
+     * @return the context builder
+     */
+    private static Context.Builder contextBuilder() {
+        // Create the GraalVM JavaScript runtime
+        return Context.newBuilder("js")
+                .allowExperimentalOptions(true)
+                .allowHostAccess(HOST_ACCESS)
+                .allowHostClassLookup(className -> true);
+    }
+
     /**
      * Initializes the runtime with the given globals
      * @param globals the globals to insert into the runtime
@@ -57,7 +130,7 @@ public class Runtime {
         }
 
         // Provide a Nashorn-style Java.resolve helper for existing scripts.
-        this.context.eval("js", "if (typeof Java !== 'undefined' && typeof Java.resolve === 'undefined') { Java.resolve = Java.type; }");
+        this.context.eval(JAVA_RESOLVE_SHIM);
     }
 
     /**
@@ -78,6 +151,15 @@ public class Runtime {
         this.context.eval("js", script);
     }
 
+    /**
+     * Executes a JavaScript source in the executor and does not return any result. Evaluating
+     * the same Source on several runtimes that share an engine parses it only once.
+     * @param source the JavaScript source to evaluate
+     */
+    public void execute(Source source) {
+        this.context.eval(source);
+    }
+
     public Context getContext() {
         return this.context;
     }
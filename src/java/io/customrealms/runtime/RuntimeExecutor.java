@@ -2,19 +2,54 @@ package io.customrealms.runtime;
 
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.SourceSection;
 import org.graalvm.polyglot.Value;
 import org.graalvm.polyglot.proxy.ProxyExecutable;
 
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class RuntimeExecutor {
+    /**
+     * The settlement of a promise, waiting to be run on the primary thread
+     */
+    private static final class Settlement {
+        final String site;
+        final Profiler.Entry stats;
+        final Runnable settle;
+
+        Settlement(String site, Profiler.Entry stats, Runnable settle) {
+            this.site = site;
+            this.stats = stats;
+            this.settle = settle;
+        }
+    }
+
+    /**
+     * The maximum number of microtasks run when draining the queue. Microtasks that keep
+     * queueing more microtasks are deferred to the next tick after this many.
+     */
+    private static final int MAX_MICROTASKS_PER_DRAIN = 10000;
+
+    /**
+     * The default maximum number of promises settled per tick
+     */
+    private static final int DEFAULT_SETTLE_BUDGET = 1000;
+
     /**
      * The executor service for asynchronous operations
      */
@@ -40,32 +75,216 @@ public class RuntimeExecutor {
      */
     private final Value promiseCtor;
 
+    /**
+     * The microtasks queued by the current entry into the runtime
+     */
+    private final ArrayDeque<Runnable> microtasks = new ArrayDeque<>();
+
+    /**
+     * The number of nested entries into the runtime currently running
+     */
+    private int depth = 0;
+
+    /**
+     * Whether a drain of the microtask queue has been scheduled for the next tick
+     */
+    private boolean drainScheduled = false;
+
+    /**
+     * The promise settlements from asynchronous operations that completed, waiting to be run on
+     * the primary thread. Any thread can add to the queue without locking.
+     */
+    private final ConcurrentLinkedQueue<Settlement> settlements = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of settlements in the queue
+     */
+    private final AtomicInteger pendingSettlements = new AtomicInteger();
+
+    /**
+     * The highest number of settlements that have been in the queue at once
+     */
+    private final AtomicInteger peakPendingSettlements = new AtomicInteger();
+
+    /**
+     * Whether a batch of settlements has been scheduled for the next tick
+     */
+    private final AtomicBoolean settleScheduled = new AtomicBoolean(false);
+
+    /**
+     * The maximum number of promises settled per tick
+     */
+    private int settleBudget = DEFAULT_SETTLE_BUDGET;
+
+    /**
+     * The time JavaScript callbacks may take per tick
+     */
+    private final TickBudget tickBudget;
+
+    /**
+     * The watchdog interrupting entries that run for too long
+     */
+    private final Watchdog watchdog;
+
+    /**
+     * The tracker of the live registrations in the runtime
+     */
+    private final LeakTracker leakTracker;
+
+    /**
+     * The repeating task sampling the live registrations, or null if it is off
+     */
+    private BukkitTask leakCheckTask;
+
+    /**
+     * The number of promises from asynchronous operations that haven't been settled yet, by
+     * the name of the operation
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> pendingPromises = new ConcurrentHashMap<>();
+
+    /**
+     * The invocation statistics of the JavaScript callbacks in the runtime
+     */
+    private final Profiler profiler = new Profiler();
+
+    /**
+     * The statistics of all microtasks together
+     */
+    private final Profiler.Entry microtaskStats = this.profiler.entry("microtask");
+
+    /**
+     * Whether the executor has been released, after which nothing more is run in the context
+     */
+    private volatile boolean released = false;
+
+    /**
+     * Constructs a runtime executor with its own tick budget, which is unlimited
+     * @param plugin the Java plugin we're running within
+     * @param context the context of the runtime
+     * @param logger the logger to output errors to
+     */
     public RuntimeExecutor(JavaPlugin plugin, Context context, Logger logger) {
+        this(plugin, context, logger, new TickBudget(logger));
+    }
+
+    /**
+     * Constructs a runtime executor that shares a tick budget with other runtimes. The owner of
+     * the budget starts it over each tick.
+     * @param plugin the Java plugin we're running within
+     * @param context the context of the runtime
+     * @param logger the logger to output errors to
+     * @param tickBudget the tick budget shared by all the runtimes
+     */
+    public RuntimeExecutor(JavaPlugin plugin, Context context, Logger logger, TickBudget tickBudget) {
         this.plugin = plugin;
         this.context = context;
         this.logger = logger;
+        this.tickBudget = tickBudget;
+        this.watchdog = new Watchdog(context, logger);
+        this.leakTracker = new LeakTracker(logger);
+        this.leakTracker.track("pending promises", this::countPendingPromises);
 
         // Get the Promise constructor
         this.promiseCtor = this.context.getBindings("js").getMember("Promise");
     }
 
     public void release() {
+        // Operations that complete from now on are dropped rather than settled
+        this.released = true;
         this.ioExecutor.shutdownNow();
+        this.microtasks.clear();
+        this.settlements.clear();
+        this.pendingSettlements.set(0);
+        this.watchdog.stop();
+        if (this.leakCheckTask != null) {
+            this.leakCheckTask.cancel();
+            this.leakCheckTask = null;
+        }
     }
 
     /**
-     * Safely executes plugin JavaScript code, and handles uncaught exceptions
+     * Sets the time an entry into the runtime may run for before the watchdog interrupts it
+     * @param milliseconds the limit in milliseconds, or 0 for no limit
+     * @param disableRunaways whether to disable the registrations of interrupted callbacks
+     */
+    public void setWatchdog(long milliseconds, boolean disableRunaways) {
+        this.watchdog.setLimit(milliseconds, disableRunaways);
+    }
+
+    public Watchdog getWatchdog() {
+        return this.watchdog;
+    }
+
+    /**
+     * Sets how often the live registrations are sampled, to find the ones that keep growing
+     * @param seconds the time between samples in seconds, or 0 to only sample on demand
+     */
+    public void setLeakCheckInterval(long seconds) {
+        if (this.leakCheckTask != null) {
+            this.leakCheckTask.cancel();
+            this.leakCheckTask = null;
+        }
+        if (seconds > 0) {
+            long ticks = seconds * 20;
+            this.leakCheckTask = Bukkit.getScheduler().runTaskTimer(this.plugin, this.leakTracker::sample, ticks, ticks);
+        }
+    }
+
+    public LeakTracker getLeakTracker() {
+        return this.leakTracker;
+    }
+
+    /**
+     * Counts the promises that haven't been settled yet, by the name of the operation
+     */
+    private Map<String, Integer> countPendingPromises() {
+        HashMap<String, Integer> counts = new HashMap<>();
+        this.pendingPromises.forEach((name, pending) -> {
+            if (pending.get() > 0) counts.put(name, pending.get());
+        });
+        return counts;
+    }
+
+    public TickBudget getTickBudget() {
+        return this.tickBudget;
+    }
+
+    public Profiler getProfiler() {
+        return this.profiler;
+    }
+
+    /**
+     * Describes where a JavaScript function was defined, to identify the callbacks in reports
+     * @param callback the JavaScript function
+     * @return the source name and line of the function
+     */
+    public static String siteOf(Value callback) {
+        SourceSection location = callback.getSourceLocation();
+        if (location == null) return "<unknown>";
+        return location.getSource().getName() + ":" + location.getStartLine();
+    }
+
+    /**
+     * Safely executes plugin JavaScript code, and handles uncaught exceptions. Microtasks queued
+     * by the code are run right after it, before returning.
      * @param runnable the runnable to execute
-     * @param logger the logger to output errors to
      */
     public void executeSafely(Runnable runnable) {
+        this.executeSafely(null, runnable);
+    }
+
+    /**
+     * Safely executes plugin JavaScript code, and handles uncaught exceptions. Microtasks queued
+     * by the code are run right after it, before returning.
+     * @param site describes the callback being executed, for overrun reports
+     * @param runnable the runnable to execute
+     */
+    public void executeSafely(String site, Runnable runnable) {
         Runnable task = () -> {
-            try {
-                runnable.run();
-            } catch (Exception ex) {
-                if (this.logger != null) {
-                    this.logger.logUnhandledException(ex);
-                }
+            if (this.released) return;
+            this.runGuarded(site, runnable);
+            if (this.depth == 0) {
+                this.drainMicrotasks();
             }
         };
         if (Bukkit.isPrimaryThread()) {
@@ -75,6 +294,170 @@ public class RuntimeExecutor {
         }
     }
 
+    /**
+     * Queues a microtask, which runs as soon as the current entry into the runtime completes.
+     * Must be called on the primary thread, within an entry. Dropped once the executor is released.
+     * @param microtask the microtask to queue
+     * @throws IllegalStateException if called outside of an entry, where nothing would drain it
+     */
+    public void queueMicrotask(Runnable microtask) {
+        if (this.released) return;
+        if (this.depth == 0) {
+            throw new IllegalStateException("Microtasks can only be queued within an entry into the runtime");
+        }
+        this.microtasks.add(microtask);
+    }
+
+    /**
+     * Runs plugin JavaScript code as an entry into the runtime, and logs uncaught exceptions.
+     * The time of outermost entries is charged to the tick budget, and watched by the watchdog.
+     * @param site describes the callback being executed, for overrun reports
+     * @param runnable the runnable to execute
+     */
+    private void runGuarded(String site, Runnable runnable) {
+        if (this.depth == 0) {
+            this.tickBudget.begin();
+            this.watchdog.begin(site);
+        }
+        this.depth++;
+        try {
+            runnable.run();
+        } catch (Exception ex) {
+            // An interrupted entry stops all the way out, rather than returning to the
+            // runaway code around a nested entry
+            if (this.depth > 1 && Watchdog.isRunaway(ex)) {
+                throw ex;
+            }
+            if (!this.watchdog.handleRunaway(site, ex, null) && this.logger != null) {
+                this.logger.logUnhandledException(ex);
+            }
+        } finally {
+            this.depth--;
+            if (this.depth == 0) {
+                this.watchdog.end();
+                this.tickBudget.end(site);
+            }
+        }
+    }
+
+    /**
+     * Runs the queued microtasks, including the ones they queue, until the queue is empty or
+     * the iteration limit is reached
+     */
+    private void drainMicrotasks() {
+        int count = 0;
+        Runnable microtask;
+        while ((microtask = this.microtasks.poll()) != null) {
+            long start = System.nanoTime();
+            this.runGuarded("microtask", microtask);
+            this.microtaskStats.record(System.nanoTime() - start);
+            if (++count >= MAX_MICROTASKS_PER_DRAIN && !this.microtasks.isEmpty()) {
+                if (this.logger != null) {
+                    this.logger.log(Logger.LogType.WARNING, "Microtask queue did not settle after " + count + " microtasks, deferring the rest to the next tick");
+                }
+                this.scheduleDrain();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Schedules a drain of the microtask queue on the next tick, if there isn't one already
+     */
+    private void scheduleDrain() {
+        if (this.drainScheduled) return;
+        this.drainScheduled = true;
+        Bukkit.getScheduler().runTask(this.plugin, () -> {
+            this.drainScheduled = false;
+            if (this.released) return;
+            this.drainMicrotasks();
+        });
+    }
+
+    /**
+     * Sets the maximum number of promises settled per tick. The remaining settlements are
+     * carried over to the next tick.
+     * @param settleBudget the number of settlements per tick, at least 1
+     */
+    public void setSettleBudget(int settleBudget) {
+        this.settleBudget = Math.max(1, settleBudget);
+    }
+
+    /**
+     * Gets the number of completed asynchronous operations whose promises are waiting to be settled
+     * @return the depth of the settlement queue
+     */
+    public int getPendingSettlements() {
+        return this.pendingSettlements.get();
+    }
+
+    /**
+     * Gets the highest number of promises that have been waiting to be settled at once
+     * @return the peak depth of the settlement queue
+     */
+    public int getPeakPendingSettlements() {
+        return this.peakPendingSettlements.get();
+    }
+
+    /**
+     * Queues the settlement of a promise, to be run on the primary thread in a batch with the
+     * other settlements. May be called from any thread.
+     * @param settlement the settlement to run
+     */
+    private void settle(Settlement settlement) {
+        // The context may already be closed
+        if (this.released) return;
+
+        // Within an entry, settle as soon as the entry completes
+        if (Bukkit.isPrimaryThread() && this.depth > 0) {
+            this.queueMicrotask(settlement.settle);
+            return;
+        }
+
+        this.settlements.add(settlement);
+        this.peakPendingSettlements.accumulateAndGet(this.pendingSettlements.incrementAndGet(), Math::max);
+        if (this.settleScheduled.compareAndSet(false, true)) {
+            Bukkit.getScheduler().runTask(this.plugin, this::settleBatch);
+        }
+    }
+
+    /**
+     * Runs a batch of queued settlements on the primary thread, up to the settle budget and
+     * while the tick budget lasts. At least one settlement is run per tick.
+     */
+    private void settleBatch() {
+        this.settleScheduled.set(false);
+
+        // Drop the settlements of operations that completed after the release
+        if (this.released) {
+            this.settlements.clear();
+            this.pendingSettlements.set(0);
+            return;
+        }
+
+        int count = 0;
+        Settlement settlement;
+        while (
+            count < this.settleBudget &&
+            (count == 0 || !this.tickBudget.isExhausted()) &&
+            (settlement = this.settlements.poll()) != null
+        ) {
+            this.pendingSettlements.decrementAndGet();
+            count++;
+
+            // Each settlement is its own entry, followed by the microtasks it queued
+            long start = System.nanoTime();
+            this.runGuarded(settlement.site, settlement.settle);
+            settlement.stats.record(System.nanoTime() - start);
+            this.drainMicrotasks();
+        }
+
+        // Carry the rest over to the next tick
+        if (!this.settlements.isEmpty() && this.settleScheduled.compareAndSet(false, true)) {
+            Bukkit.getScheduler().runTask(this.plugin, this::settleBatch);
+        }
+    }
+
     private Throwable unwrapCompletionException(Throwable error) {
         while (
             (error instanceof CompletionException ||
@@ -88,6 +471,33 @@ public class RuntimeExecutor {
     }
 
     public <T> ProxyExecutable promiseFunction(Function<Value[], Supplier<T>> prepare) {
+        return this.promiseFunction("promise", prepare);
+    }
+
+    /**
+     * Creates a JavaScript function that runs an operation on a virtual thread, and returns a
+     * promise for its result. The promise is settled on the primary thread.
+     * @param name the name of the function, for the profiler
+     * @param prepare prepares the operation from the function arguments, on the calling thread
+     * @return the JavaScript function
+     */
+    public <T> ProxyExecutable promiseFunction(String name, Function<Value[], Supplier<T>> prepare) {
+        return this.promiseFunction(name, prepare, result -> result);
+    }
+
+    /**
+     * Creates a JavaScript function that runs an operation on a virtual thread, and returns a
+     * promise for its result. The result is converted to a JavaScript value on the primary
+     * thread, right before the promise is settled.
+     * @param name the name of the function, for the profiler
+     * @param prepare prepares the operation from the function arguments, on the calling thread
+     * @param convert converts the result of the operation, on the primary thread
+     * @return the JavaScript function
+     */
+    public <T> ProxyExecutable promiseFunction(String name, Function<Value[], Supplier<T>> prepare, Function<T, Object> convert) {
+        String site = "settle " + name;
+        Profiler.Entry stats = this.profiler.entry(site);
+        AtomicInteger pending = this.pendingPromises.computeIfAbsent(name, key -> new AtomicInteger());
         return args -> {
             // Create the new Promise
             return this.promiseCtor.newInstance((ProxyExecutable) promiseArgs -> {
@@ -97,13 +507,20 @@ public class RuntimeExecutor {
 
                 // Call the function with the args to get the CompletableFuture
                 CompletableFuture<T> future = CompletableFuture.supplyAsync(prepare.apply(args), this.ioExecutor);
+                pending.incrementAndGet();
 
                 // When the future is complete, resolve or reject the promise
                 future.whenComplete((result, error) -> {
                     if (error != null) {
-                        this.executeSafely(() -> reject.executeVoid(this.unwrapCompletionException(error)));
+                        this.settle(new Settlement(site, stats, () -> {
+                            pending.decrementAndGet();
+                            reject.executeVoid(this.unwrapCompletionException(error));
+                        }));
                     } else {
-                        this.executeSafely(() -> resolve.executeVoid(result));
+                        this.settle(new Settlement(site, stats, () -> {
+                            pending.decrementAndGet();
+                            resolve.executeVoid(convert.apply(result));
+                        }));
                     }
                 });
 
@@ -0,0 +1,153 @@
+package io.customrealms.runtime;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StructuredClone copies JavaScript values between contexts, which can't share objects. A value
+ * is first copied into plain Java objects in the context it comes from, which can then be
+ * handed to another thread, and rebuilt as JavaScript values in the destination context.
+ *
+ * Primitives, arrays, plain objects, dates and ArrayBuffers can be cloned. Functions within
+ * objects are left out. Functions, Java objects, cyclic structures, and objects whose prototype
+ * would be lost in the copy, such as maps, sets, typed arrays and class instances, can't be
+ * cloned.
+ */
+public class StructuredClone {
+    /**
+     * The maximum nesting of objects and arrays, which also stops cyclic structures
+     */
+    private static final int MAX_DEPTH = 256;
+
+    /**
+     * Functions in the destination context that create the rebuilt values
+     */
+    private final Value newObject;
+    private final Value newArray;
+    private final Value newDate;
+    private final Value arrayBufferCtor;
+
+    /**
+     * The destination context
+     */
+    private final Context context;
+
+    /**
+     * Prepares to rebuild values in a context. Must be called on the thread using the context.
+     * @param context the destination context
+     */
+    public StructuredClone(Context context) {
+        this.context = context;
+        this.newObject = context.eval("js", "() => ({})");
+        this.newArray = context.eval("js", "() => []");
+        this.newDate = context.eval("js", "(ms) => new Date(ms)");
+        this.arrayBufferCtor = context.getBindings("js").getMember("ArrayBuffer");
+    }
+
+    /**
+     * Copies a JavaScript value into plain Java objects: null, Boolean, Integer, Double,
+     * String, Instant, byte[], List and Map. Must be called on the thread using the value's
+     * context.
+     * @param value the value to copy
+     * @return the copy
+     * @throws IllegalArgumentException if the value can't be cloned
+     */
+    public static Object toJava(Value value) {
+        return StructuredClone.toJava(value, 0);
+    }
+
+    private static Object toJava(Value value, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Could not clone a value nested more than " + MAX_DEPTH + " levels deep, or a cyclic value");
+        }
+        if (value == null || value.isNull()) return null;
+        if (value.isBoolean()) return value.asBoolean();
+        if (value.isNumber()) return value.fitsInInt() ? (Object) value.asInt() : (Object) value.asDouble();
+        if (value.isString()) return value.asString();
+        if (value.isInstant()) return value.asInstant();
+        if (value.canExecute() || value.isHostObject()) {
+            throw new IllegalArgumentException("Could not clone " + value);
+        }
+
+        // ArrayBuffers are copied byte for byte
+        if (value.hasBufferElements()) {
+            byte[] bytes = new byte[Math.toIntExact(value.getBufferSize())];
+            value.readBuffer(0, bytes, 0, bytes.length);
+            return bytes;
+        }
+
+        // Only plain arrays and objects are copied as lists and maps, anything else built on them,
+        // such as a typed array, a Map or a class instance, would come out as something else
+        Value meta = value.getMetaObject();
+        String type = meta == null ? null : meta.getMetaQualifiedName();
+
+        if (value.hasArrayElements()) {
+            if (!"Array".equals(type)) {
+                throw new IllegalArgumentException("Could not clone " + StructuredClone.describe(type) + ", only plain arrays can be cloned");
+            }
+            List<Object> list = new ArrayList<>((int) value.getArraySize());
+            for (long i = 0; i < value.getArraySize(); i++) {
+                list.add(StructuredClone.toJava(value.getArrayElement(i), depth + 1));
+            }
+            return list;
+        }
+
+        if (value.hasMembers()) {
+            if (type != null && !"Object".equals(type)) {
+                throw new IllegalArgumentException("Could not clone " + StructuredClone.describe(type) + ", only plain objects can be cloned");
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (String key : value.getMemberKeys()) {
+                Value member = value.getMember(key);
+                if (member != null && member.canExecute()) continue;
+                map.put(key, StructuredClone.toJava(member, depth + 1));
+            }
+            return map;
+        }
+
+        throw new IllegalArgumentException("Could not clone " + value);
+    }
+
+    private static String describe(String type) {
+        return type == null || type.isEmpty() ? "an instance of an anonymous class" : "a " + type;
+    }
+
+    /**
+     * Rebuilds a copy made by toJava as a JavaScript value in the destination context. Must be
+     * called on the thread using the destination context.
+     * @param copy the copy to rebuild
+     * @return the JavaScript value
+     */
+    @SuppressWarnings("unchecked")
+    public Value toJs(Object copy) {
+        if (copy instanceof byte[]) {
+            return this.arrayBufferCtor.newInstance(ByteBuffer.wrap((byte[]) copy));
+        }
+        if (copy instanceof Instant) {
+            return this.newDate.execute(((Instant) copy).toEpochMilli());
+        }
+        if (copy instanceof List) {
+            List<Object> list = (List<Object>) copy;
+            Value array = this.newArray.execute();
+            for (int i = 0; i < list.size(); i++) {
+                array.setArrayElement(i, this.toJs(list.get(i)));
+            }
+            return array;
+        }
+        if (copy instanceof Map) {
+            Value object = this.newObject.execute();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) copy).entrySet()) {
+                object.putMember(entry.getKey(), this.toJs(entry.getValue()));
+            }
+            return object;
+        }
+        return this.context.asValue(copy);
+    }
+}
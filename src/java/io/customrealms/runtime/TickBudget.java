@@ -0,0 +1,222 @@
+package io.customrealms.runtime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TickBudget limits how much time JavaScript callbacks may take within a single server tick.
+ * Deferrable work, such as timers and promise settlements, checks the budget and is carried
+ * over to the next tick once it is exhausted. The callback during which the budget ran out is
+ * recorded as an overrun.
+ */
+public class TickBudget {
+    /**
+     * An overrun of the budget
+     */
+    public static final class Overrun {
+        /**
+         * The callback that was running when the budget ran out
+         */
+        public final String site;
+
+        /**
+         * The time the callback took, in nanoseconds
+         */
+        public final long callbackNanos;
+
+        /**
+         * The time spent in the runtime in the tick, up to the end of the callback, in nanoseconds
+         */
+        public final long tickNanos;
+
+        /**
+         * The wall clock time of the overrun, in milliseconds
+         */
+        public final long timestamp;
+
+        private Overrun(String site, long callbackNanos, long tickNanos) {
+            this.site = site;
+            this.callbackNanos = callbackNanos;
+            this.tickNanos = tickNanos;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The number of recent overruns that are kept
+     */
+    private static final int RECENT_OVERRUNS = 32;
+
+    /**
+     * The minimum time between overrun warnings in the log
+     */
+    private static final long WARNING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * The logger to report overruns to
+     */
+    private final Logger logger;
+
+    /**
+     * The time the runtime may take per tick, in nanoseconds, or 0 for no limit
+     */
+    private long budgetNanos = 0;
+
+    /**
+     * The time spent in the runtime in the current tick by completed entries
+     */
+    private long spentNanos = 0;
+
+    /**
+     * The start time of the entry in progress, or 0 if there is none
+     */
+    private long entryStart = 0;
+
+    /**
+     * The number of nested entries in progress. One runtime's callback can enter another
+     * runtime sharing the budget, such as through an event it fires, and only the outermost
+     * entry is charged.
+     */
+    private int depth = 0;
+
+    /**
+     * Whether the overrun of the current tick has been recorded
+     */
+    private boolean overrun = false;
+
+    /**
+     * The total number of overruns
+     */
+    private long overrunCount = 0;
+
+    /**
+     * The most recent overruns, oldest first
+     */
+    private final ArrayDeque<Overrun> recentOverruns = new ArrayDeque<>();
+
+    /**
+     * The time of the last overrun warning, and the overruns not logged since
+     */
+    private long lastWarning = 0;
+    private int suppressedWarnings = 0;
+
+    public TickBudget(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Sets the time the runtime may take per tick
+     * @param budgetNanos the budget in nanoseconds, or 0 for no limit
+     */
+    public void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = Math.max(0, budgetNanos);
+    }
+
+    public long getBudgetNanos() {
+        return this.budgetNanos;
+    }
+
+    /**
+     * Checks if the budget is limited at all
+     * @return true if there is a budget
+     */
+    public boolean isLimited() {
+        return this.budgetNanos > 0;
+    }
+
+    /**
+     * Starts the budget of a new tick
+     */
+    public void reset() {
+        this.spentNanos = 0;
+        this.overrun = false;
+    }
+
+    /**
+     * Marks the start of an entry into the runtime
+     */
+    void begin() {
+        if (this.depth++ == 0) {
+            this.entryStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Marks the end of an entry into the runtime, and charges its time to the budget
+     * @param site the callback the entry was for, if it wasn't attributed more precisely
+     */
+    void end(String site) {
+        if (--this.depth > 0) return;
+        long elapsed = System.nanoTime() - this.entryStart;
+        this.entryStart = 0;
+        this.spentNanos += elapsed;
+        this.checkOverrun(site, elapsed);
+    }
+
+    /**
+     * Checks if the budget of the current tick has been used up, including the time of the
+     * entry in progress. Deferrable work should be carried over to the next tick if it has.
+     * @return true if the budget is exhausted
+     */
+    public boolean isExhausted() {
+        if (this.budgetNanos <= 0) return false;
+        return this.getSpentNanos() >= this.budgetNanos;
+    }
+
+    /**
+     * Gets the time spent in the runtime in the current tick so far
+     * @return the time in nanoseconds
+     */
+    public long getSpentNanos() {
+        long inProgress = this.entryStart > 0 ? System.nanoTime() - this.entryStart : 0;
+        return this.spentNanos + inProgress;
+    }
+
+    /**
+     * Records an overrun if the budget ran out during a callback that just completed. Only
+     * the first callback to exhaust the budget in each tick is recorded.
+     * @param site the callback that just completed
+     * @param callbackNanos the time the callback took
+     */
+    public void checkOverrun(String site, long callbackNanos) {
+        if (this.overrun || !this.isExhausted()) return;
+        this.overrun = true;
+
+        Overrun overrun = new Overrun(site != null ? site : "<unknown>", callbackNanos, this.getSpentNanos());
+        this.overrunCount++;
+        this.recentOverruns.addLast(overrun);
+        if (this.recentOverruns.size() > RECENT_OVERRUNS) {
+            this.recentOverruns.removeFirst();
+        }
+
+        // Log a warning, limited so a constantly overloaded runtime doesn't flood the log
+        if (this.logger == null) return;
+        long now = System.nanoTime();
+        if (this.lastWarning != 0 && now - this.lastWarning < WARNING_INTERVAL_NANOS) {
+            this.suppressedWarnings++;
+            return;
+        }
+        String suppressed = this.suppressedWarnings > 0 ? " (" + this.suppressedWarnings + " more overruns since the last warning)" : "";
+        this.logger.log(
+            Logger.LogType.WARNING,
+            "JavaScript tick budget of " + TimeUnit.NANOSECONDS.toMillis(this.budgetNanos) + "ms exceeded by " + overrun.site
+                + ", which took " + TimeUnit.NANOSECONDS.toMillis(overrun.callbackNanos) + "ms" + suppressed
+        );
+        this.lastWarning = now;
+        this.suppressedWarnings = 0;
+    }
+
+    public long getOverrunCount() {
+        return this.overrunCount;
+    }
+
+    /**
+     * Gets the most recent overruns
+     * @return the overruns, oldest first
+     */
+    public List<Overrun> getRecentOverruns() {
+        return new ArrayList<>(this.recentOverruns);
+    }
+}
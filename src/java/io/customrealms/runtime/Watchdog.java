@@ -0,0 +1,241 @@
+package io.customrealms.runtime;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Watchdog interrupts entries into the runtime that run for too long, such as an infinite loop
+ * in an event handler, before they freeze the server thread. A background thread checks the
+ * entry in progress, and interrupts the context once it has run past the limit. The interrupted
+ * callback is reported with its JavaScript stack, and its registration can be disabled.
+ */
+public class Watchdog {
+    /**
+     * How long the watchdog waits for the interruption to take effect. An entry blocked in Java
+     * code can't be interrupted until it returns to JavaScript.
+     */
+    private static final Duration INTERRUPT_TIMEOUT = Duration.ofMillis(100);
+
+    /**
+     * The shortest time between checks of the entry in progress
+     */
+    private static final long MIN_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * The context to interrupt
+     */
+    private final Context context;
+
+    /**
+     * The logger to report interrupted callbacks to
+     */
+    private final Logger logger;
+
+    /**
+     * The time an entry may run for, in nanoseconds, or 0 if the watchdog is off
+     */
+    private volatile long limitNanos = 0;
+
+    /**
+     * Whether the registrations of interrupted callbacks are disabled
+     */
+    private volatile boolean disableRunaways = false;
+
+    /**
+     * The number of the entry in progress, which changes with every entry
+     */
+    private volatile long entry = 0;
+
+    /**
+     * Whether an entry is in progress
+     */
+    private volatile boolean running = false;
+
+    /**
+     * The time the entry in progress started, or was last interrupted
+     */
+    private volatile long entryStart = 0;
+
+    /**
+     * The callback the entry in progress was started for
+     */
+    private volatile String entrySite;
+
+    /**
+     * The number of the last entry the watchdog interrupted, or -1 if none. An interruption
+     * can land after the entry it was meant for has ended, in the entry that followed.
+     */
+    private volatile long interruptedEntry = -1;
+
+    /**
+     * The number of callbacks that have been interrupted
+     */
+    private volatile long interruptCount = 0;
+
+    /**
+     * The background thread checking the entries, or null if the watchdog is off
+     */
+    private volatile Thread thread;
+
+    public Watchdog(Context context, Logger logger) {
+        this.context = context;
+        this.logger = logger;
+    }
+
+    /**
+     * Sets the time an entry into the runtime may run for before it is interrupted
+     * @param milliseconds the limit in milliseconds, or 0 to turn the watchdog off
+     * @param disableRunaways whether to disable the registrations of interrupted callbacks
+     */
+    public synchronized void setLimit(long milliseconds, boolean disableRunaways) {
+        this.limitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, milliseconds));
+        this.disableRunaways = disableRunaways;
+        if (this.limitNanos > 0 && this.thread == null) {
+            // The thread is assigned before it starts, since it runs for as long as it is the
+            // watchdog's thread
+            this.thread = Thread.ofPlatform().daemon().name("customrealms-watchdog").unstarted(this::watch);
+            this.thread.start();
+        } else if (this.limitNanos == 0 && this.thread != null) {
+            this.stop();
+        }
+    }
+
+    /**
+     * Stops the background thread
+     */
+    public synchronized void stop() {
+        if (this.thread == null) return;
+        Thread stopped = this.thread;
+        this.thread = null;
+        LockSupport.unpark(stopped);
+    }
+
+    /**
+     * Marks the start of an outermost entry into the runtime
+     * @param site describes the callback being executed
+     */
+    void begin(String site) {
+        this.entrySite = site;
+        this.entryStart = System.nanoTime();
+        this.entry++;
+        this.running = true;
+    }
+
+    /**
+     * Marks the end of the outermost entry into the runtime
+     */
+    void end() {
+        this.running = false;
+    }
+
+    /**
+     * Checks if an exception is the interruption of a runaway callback by the watchdog
+     * @param ex the exception thrown by the callback
+     * @return true if the callback was interrupted
+     */
+    public static boolean isRunaway(Exception ex) {
+        return ex instanceof PolyglotException && ((PolyglotException) ex).isInterrupted();
+    }
+
+    /**
+     * Handles an exception thrown by a callback if it is an interruption by the watchdog. The
+     * callback is reported with its JavaScript stack, and its registration is disabled if the
+     * watchdog is set up to do so. An interruption meant for an earlier entry is reported
+     * without blaming or disabling the callback it landed in.
+     * @param site describes the callback that was interrupted
+     * @param ex the exception thrown by the callback
+     * @param disable disables the registration of the callback, or null if it can't be disabled
+     * @return true if the exception was an interruption, which has been handled
+     */
+    public boolean handleRunaway(String site, Exception ex, Runnable disable) {
+        if (!Watchdog.isRunaway(ex)) return false;
+
+        // Interrupting the context may also interrupt the thread, which must not leak into
+        // the server code running after the entry
+        Thread.interrupted();
+
+        // The interruption was meant for an entry that ended before it took effect
+        if (this.interruptedEntry != this.entry) {
+            this.logger.log(
+                Logger.LogType.WARNING,
+                "An interruption meant for an earlier runaway callback stopped " + (site == null ? "<unknown>" : site) + " instead"
+            );
+            return true;
+        }
+
+        boolean disabled = disable != null && this.disableRunaways;
+        if (disabled) {
+            disable.run();
+        }
+
+        // Report the callback with the JavaScript stack at the point it was interrupted
+        StringBuilder message = new StringBuilder("Interrupted ")
+            .append(site == null ? "<unknown>" : site)
+            .append(" after it ran for longer than ")
+            .append(TimeUnit.NANOSECONDS.toMillis(this.limitNanos))
+            .append("ms");
+        if (disabled) {
+            message.append(", and disabled it");
+        }
+        for (PolyglotException.StackFrame frame : ((PolyglotException) ex).getPolyglotStackTrace()) {
+            if (frame.isGuestFrame()) {
+                message.append("\n    at ").append(frame);
+            }
+        }
+        this.logger.log(Logger.LogType.ERROR, message.toString());
+        return true;
+    }
+
+    /**
+     * Gets the number of callbacks that have been interrupted
+     * @return the number of interruptions
+     */
+    public long getInterruptCount() {
+        return this.interruptCount;
+    }
+
+    /**
+     * Checks the entry in progress until the watchdog is stopped
+     */
+    private void watch() {
+        long reportedEntry = -1;
+        while (this.thread == Thread.currentThread()) {
+            long limit = this.limitNanos;
+            LockSupport.parkNanos(Math.max(MIN_POLL_NANOS, limit / 4));
+            if (!this.running || limit == 0) continue;
+
+            // Check that the same entry is still running past the limit
+            long entry = this.entry;
+            long elapsed = System.nanoTime() - this.entryStart;
+            if (elapsed < limit || !this.running || entry != this.entry) continue;
+
+            try {
+                this.interruptedEntry = entry;
+                this.context.interrupt(INTERRUPT_TIMEOUT);
+                this.interruptCount++;
+            } catch (TimeoutException ex) {
+                // Report an entry stuck in Java code once, and keep trying
+                if (reportedEntry != entry) {
+                    reportedEntry = entry;
+                    this.logger.log(
+                        Logger.LogType.WARNING,
+                        "Could not interrupt " + this.entrySite + " after " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, it is blocked outside of JavaScript code"
+                    );
+                }
+                continue;
+            } catch (IllegalStateException ex) {
+                // The context has been closed
+                return;
+            }
+
+            // The rest of the entry gets the full limit again, so that the callbacks after
+            // the interrupted one aren't interrupted right away
+            this.entryStart = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package io.customrealms.runtime.globals;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.graalvm.polyglot.Value;
+
+/**
+ * BlockEdit is a region being filled with a pattern, a slice at a time. The region is walked
+ * one chunk column at a time, so each slice touches as few chunks as possible.
+ */
+class BlockEdit {
+    /**
+     * Completes with the counters of the edit once every block has been visited
+     */
+    final CompletableFuture<HashMap<String, Object>> done = new CompletableFuture<>();
+
+    /**
+     * The world and the inclusive bounds of the region
+     */
+    private final World world;
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    /**
+     * The materials of the pattern, and their cumulative weights
+     */
+    private final Material[] materials;
+    private final double[] weights;
+
+    /**
+     * The materials that may be replaced, or null to replace any block
+     */
+    private final Set<Material> mask;
+
+    /**
+     * Whether block changes trigger physics updates
+     */
+    private final boolean physics;
+
+    /**
+     * The maximum number of blocks visited per tick by this edit
+     */
+    final int blocksPerTick;
+
+    /**
+     * Called with the progress after each slice, or null
+     */
+    final Value onProgress;
+
+    /**
+     * Picks blocks from weighted patterns
+     */
+    private final SplittableRandom random = new SplittableRandom();
+
+    /**
+     * The current chunk, its bounds within the region, and the next block to visit
+     */
+    private int chunkX, chunkZ;
+    private int chunkMinX, chunkMaxX, chunkMinZ, chunkMaxZ;
+    private int x, y, z;
+
+    /**
+     * The counters of the edit
+     */
+    private final long total;
+    private long visited = 0;
+    private long changed = 0;
+    private int ticks = 0;
+
+    BlockEdit(
+        World world,
+        int x1, int y1, int z1,
+        int x2, int y2, int z2,
+        Material[] materials,
+        double[] weights,
+        Set<Material> mask,
+        boolean physics,
+        int blocksPerTick,
+        Value onProgress
+    ) {
+        this.world = world;
+        this.minX = Math.min(x1, x2);
+        this.minY = Math.min(y1, y2);
+        this.minZ = Math.min(z1, z2);
+        this.maxX = Math.max(x1, x2);
+        this.maxY = Math.max(y1, y2);
+        this.maxZ = Math.max(z1, z2);
+        this.materials = materials;
+        this.weights = weights;
+        this.mask = mask;
+        this.physics = physics;
+        this.blocksPerTick = blocksPerTick;
+        this.onProgress = onProgress;
+        this.total = (long) (this.maxX - this.minX + 1) * (this.maxY - this.minY + 1) * (this.maxZ - this.minZ + 1);
+        this.chunkX = this.minX >> 4;
+        this.chunkZ = this.minZ >> 4;
+        this.enterChunk();
+    }
+
+    /**
+     * Visits the next blocks of the region
+     * @param budget the maximum number of blocks to visit
+     * @return the number of blocks visited
+     */
+    int step(int budget) {
+        int count = 0;
+        while (count < budget && this.visited < this.total) {
+            Block block = this.world.getBlockAt(this.x, this.y, this.z);
+            Material current = block.getType();
+            if (this.mask == null || this.mask.contains(current)) {
+                Material material = this.pick();
+                if (material != current) {
+                    block.setType(material, this.physics);
+                    this.changed++;
+                }
+            }
+            this.visited++;
+            count++;
+            this.advance();
+        }
+        return count;
+    }
+
+    /**
+     * Counts a tick the edit made progress in
+     */
+    void countTick() {
+        this.ticks++;
+    }
+
+    boolean isFinished() {
+        return this.visited >= this.total;
+    }
+
+    long getVisited() {
+        return this.visited;
+    }
+
+    long getChanged() {
+        return this.changed;
+    }
+
+    long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * Gets the counters of the edit, for the result of the promise
+     */
+    HashMap<String, Object> getResult() {
+        HashMap<String, Object> result = new HashMap<>();
+        result.put("total", this.total);
+        result.put("visited", this.visited);
+        result.put("changed", this.changed);
+        result.put("ticks", this.ticks);
+        return result;
+    }
+
+    private Material pick() {
+        if (this.materials.length == 1) return this.materials[0];
+        double roll = this.random.nextDouble() * this.weights[this.weights.length - 1];
+        for (int i = 0; i < this.weights.length; i++) {
+            if (roll < this.weights[i]) return this.materials[i];
+        }
+        return this.materials[this.materials.length - 1];
+    }
+
+    /**
+     * Moves to the next block: along x, then z, then y within the chunk, then to the next chunk
+     */
+    private void advance() {
+        if (++this.x <= this.chunkMaxX) return;
+        this.x = this.chunkMinX;
+        if (++this.z <= this.chunkMaxZ) return;
+        this.z = this.chunkMinZ;
+        if (++this.y <= this.maxY) return;
+        if (++this.chunkX > this.maxX >> 4) {
+            this.chunkX = this.minX >> 4;
+            this.chunkZ++;
+        }
+        this.enterChunk();
+    }
+
+    private void enterChunk() {
+        this.chunkMinX = Math.max(this.minX, this.chunkX << 4);
+        this.chunkMaxX = Math.min(this.maxX, (this.chunkX << 4) + 15);
+        this.chunkMinZ = Math.max(this.minZ, this.chunkZ << 4);
+        this.chunkMaxZ = Math.min(this.maxZ, (this.chunkZ << 4) + 15);
+        this.x = this.chunkMinX;
+        this.y = this.minY;
+        this.z = this.chunkMinZ;
+    }
+}
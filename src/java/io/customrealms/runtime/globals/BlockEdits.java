@@ -0,0 +1,247 @@
+package io.customrealms.runtime.globals;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import io.customrealms.runtime.Global;
+import io.customrealms.runtime.Logger;
+import io.customrealms.runtime.RuntimeExecutor;
+import io.customrealms.runtime.TickBudget;
+
+/**
+ * BlockEdits fills regions with block patterns from Java, spread over as many ticks as needed
+ * to stay within a per-tick block budget. Edits run one after another, in the order they were
+ * started, and each resolves a promise with its counters once done.
+ */
+public class BlockEdits implements Global {
+    /**
+     * The number of blocks visited between checks of the tick budget
+     */
+    private static final int BUDGET_CHECK_INTERVAL = 256;
+
+    /**
+     * The share of the tick budget the edits stop at. The margin left absorbs the last slice
+     * and progress callback, so filling the budget with edits isn't recorded as an overrun.
+     */
+    private static final double BUDGET_SHARE = 0.9;
+
+    /**
+     * The plugin the edits are scheduled for
+     */
+    private final JavaPlugin plugin;
+
+    /**
+     * The runtime executor for this plugin.
+     */
+    private final RuntimeExecutor executor;
+
+    /**
+     * The maximum number of blocks visited per tick, across all the edits
+     */
+    private final int blocksPerTick;
+
+    /**
+     * The logger for exceptions thrown by progress callbacks
+     */
+    private final Logger logger;
+
+    /**
+     * The edits that haven't finished, in the order they were started
+     */
+    private final ArrayDeque<BlockEdit> edits = new ArrayDeque<>();
+
+    /**
+     * The task applying the edits every tick, while there are any
+     */
+    private BukkitTask driver;
+
+    /**
+     * Constructs the block edits global
+     * @param plugin the plugin to schedule the edits for
+     * @param executor the runtime executor
+     * @param logger the logger for exceptions thrown by progress callbacks
+     * @param blocksPerTick the maximum number of blocks visited per tick, across all the edits
+     */
+    public BlockEdits(JavaPlugin plugin, RuntimeExecutor executor, Logger logger, int blocksPerTick) {
+        this.plugin = plugin;
+        this.executor = executor;
+        this.logger = logger;
+        this.blocksPerTick = Math.max(1, blocksPerTick);
+    }
+
+    public void init(Value bindings) {
+        HashMap<String, Object> blocks = new HashMap<>();
+        blocks.put("fill", this.executor.promiseFunction("__blocks.fill", this::jsFill, ProxyObject::fromMap));
+        bindings.putMember("__blocks", ProxyObject.fromMap(blocks));
+    }
+
+    /**
+     * Releases all the values tying the runtime to the plugin
+     */
+    public void release() {
+        if (this.driver != null) {
+            this.driver.cancel();
+            this.driver = null;
+        }
+
+        // Fail the unfinished edits, so their promises don't wait forever
+        for (BlockEdit edit : this.edits) {
+            edit.done.completeExceptionally(new IllegalStateException("The block edit was cancelled"));
+        }
+        this.edits.clear();
+    }
+
+    private Supplier<HashMap<String, Object>> jsFill(Value... args) {
+        String worldName = args[0].asString();
+        World world = Bukkit.getWorld(worldName);
+        if (world == null) {
+            throw new IllegalArgumentException("Unknown world: " + worldName);
+        }
+
+        // Read the pattern: a material, a list of materials, or materials with weights
+        Value pattern = args[7];
+        Material[] materials;
+        double[] weights;
+        if (pattern.isString()) {
+            materials = new Material[] { BlockEdits.parseMaterial(pattern.asString()) };
+            weights = new double[] { 1 };
+        } else if (pattern.hasArrayElements()) {
+            materials = new Material[(int) pattern.getArraySize()];
+            weights = new double[materials.length];
+            for (int i = 0; i < materials.length; i++) {
+                materials[i] = BlockEdits.parseMaterial(pattern.getArrayElement(i).asString());
+                weights[i] = i + 1;
+            }
+        } else {
+            Set<String> keys = pattern.getMemberKeys();
+            materials = new Material[keys.size()];
+            weights = new double[materials.length];
+            int i = 0;
+            double cumulative = 0;
+            for (String key : keys) {
+                materials[i] = BlockEdits.parseMaterial(key);
+                cumulative += pattern.getMember(key).asDouble();
+                weights[i++] = cumulative;
+            }
+        }
+        if (materials.length == 0) {
+            throw new IllegalArgumentException("The pattern has no materials");
+        }
+
+        // Read the options
+        Value options = args.length > 8 && args[8].hasMembers() ? args[8] : null;
+        Set<Material> mask = null;
+        boolean physics = false;
+        int editBlocksPerTick = this.blocksPerTick;
+        Value onProgress = null;
+        if (options != null) {
+            Value maskValue = options.getMember("mask");
+            if (maskValue != null && maskValue.hasArrayElements()) {
+                mask = new HashSet<>();
+                for (long i = 0; i < maskValue.getArraySize(); i++) {
+                    mask.add(BlockEdits.parseMaterial(maskValue.getArrayElement(i).asString()));
+                }
+            }
+            Value physicsValue = options.getMember("physics");
+            physics = physicsValue != null && !physicsValue.isNull() && physicsValue.asBoolean();
+            Value blocksPerTickValue = options.getMember("blocksPerTick");
+            if (blocksPerTickValue != null && !blocksPerTickValue.isNull()) {
+                editBlocksPerTick = Math.max(1, Math.min(this.blocksPerTick, blocksPerTickValue.asInt()));
+            }
+            Value progressValue = options.getMember("onProgress");
+            if (progressValue != null && progressValue.canExecute()) {
+                onProgress = progressValue;
+            }
+        }
+
+        BlockEdit edit = new BlockEdit(
+            world,
+            args[1].asInt(), args[2].asInt(), args[3].asInt(),
+            args[4].asInt(), args[5].asInt(), args[6].asInt(),
+            materials, weights, mask, physics, editBlocksPerTick, onProgress
+        );
+        this.edits.add(edit);
+        if (this.driver == null) {
+            this.driver = Bukkit.getScheduler().runTaskTimer(this.plugin, this::tick, 1, 1);
+        }
+
+        // The edit is applied on the primary thread, and the promise waits for it to finish
+        return edit.done::join;
+    }
+
+    private void tick() {
+        if (!this.edits.isEmpty()) {
+            this.executor.executeSafely("block edits", this::applySlices);
+        }
+
+        // Stop ticking while there are no edits
+        if (this.edits.isEmpty() && this.driver != null) {
+            this.driver.cancel();
+            this.driver = null;
+        }
+    }
+
+    /**
+     * Applies the edits in order, until the block budget or most of the tick budget is spent.
+     * At least one slice is applied per tick, so edits always make progress.
+     */
+    private void applySlices() {
+        TickBudget budget = this.executor.getTickBudget();
+        int remaining = this.blocksPerTick;
+        while (remaining > 0 && !this.edits.isEmpty()) {
+            BlockEdit edit = this.edits.peek();
+            int sliceBudget = Math.min(remaining, edit.blocksPerTick);
+            int visited = 0;
+            while (visited < sliceBudget && !edit.isFinished()) {
+                visited += edit.step(Math.min(BUDGET_CHECK_INTERVAL, sliceBudget - visited));
+                if (BlockEdits.isOutOfTime(budget)) break;
+            }
+            remaining -= visited;
+            edit.countTick();
+
+            if (edit.onProgress != null) {
+                try {
+                    edit.onProgress.executeVoid(edit.getChanged(), edit.getVisited(), edit.getTotal());
+                } catch (Exception ex) {
+                    // A failing progress callback doesn't stop the edit
+                    this.logger.logUnhandledException(ex);
+                }
+            }
+
+            if (edit.isFinished()) {
+                this.edits.poll();
+                edit.done.complete(edit.getResult());
+            } else {
+                // The edit used its own share of the tick, or the tick budget ran out
+                break;
+            }
+            if (BlockEdits.isOutOfTime(budget)) break;
+        }
+    }
+
+    /**
+     * Checks if the edits have used their share of the tick budget
+     */
+    private static boolean isOutOfTime(TickBudget budget) {
+        return budget.isLimited() && budget.getSpentNanos() >= budget.getBudgetNanos() * BUDGET_SHARE;
+    }
+
+    private static Material parseMaterial(String name) {
+        Material material = Material.matchMaterial(name);
+        if (material == null || !material.isBlock()) {
+            throw new IllegalArgumentException("Unknown block material: " + name);
+        }
+        return material;
+    }
+}
@@ -1,29 +1,84 @@
 package io.customrealms.runtime.globals;
 
 import io.customrealms.runtime.Global;
+import io.customrealms.runtime.Profiler;
+import io.customrealms.runtime.RuntimeExecutor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandMap;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.graalvm.polyglot.Value;
 import org.graalvm.polyglot.proxy.ProxyExecutable;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class BukkitCommands implements Global {
     /**
      * The Java plugin we're running within
      */
     private final JavaPlugin plugin;
 
-    public BukkitCommands(JavaPlugin plugin) {
+    /**
+     * The runtime executor for this plugin.
+     */
+    private final RuntimeExecutor executor;
+
+    /**
+     * The commands from the plugin.yml file that handlers were registered for
+     */
+    private final ArrayList<PluginCommand> registeredCommands = new ArrayList<>();
+
+    /**
+     * The commands defined at runtime, by name
+     */
+    private final HashMap<String, DynamicCommand> dynamicCommands = new HashMap<>();
+
+    /**
+     * The cached suggestion sets used for tab completion, by name. Tab completion may happen
+     * off the primary thread, so the sets are immutable and replaced as a whole.
+     */
+    private final Map<String, List<String>> suggestions = new ConcurrentHashMap<>();
+
+    /**
+     * Whether the command list has changed since it was last sent to the players
+     */
+    private boolean syncScheduled = false;
+
+    public BukkitCommands(JavaPlugin plugin, RuntimeExecutor executor) {
         this.plugin = plugin;
+        this.executor = executor;
     }
 
     public void init(Value bindings) {
         bindings.putMember("__commands_register", (ProxyExecutable) this::jsRegister);
+        bindings.putMember("__commands_define", (ProxyExecutable) this::jsDefine);
+        bindings.putMember("__commands_suggestions", (ProxyExecutable) this::jsSuggestions);
     }
 
     /**
      * Releases all the values tying the runtime to the plugin
      */
-    public void release() {}
+    public void release() {
+        // Hand the plugin.yml commands back to the plugin, which doesn't handle them
+        this.registeredCommands.forEach(command -> command.setExecutor(null));
+        this.registeredCommands.clear();
+
+        if (this.dynamicCommands.isEmpty()) return;
+        CommandMap commandMap = this.getCommandMap();
+        for (DynamicCommand command : this.dynamicCommands.values()) {
+            this.unregister(commandMap, command);
+        }
+        this.dynamicCommands.clear();
+        this.suggestions.clear();
+
+        // The plugin may be disabling, so tasks can't be scheduled anymore
+        this.syncCommands();
+    }
 
     public Boolean jsRegister(Value... args) {
         String name = args[0].asString();
@@ -35,8 +90,153 @@ public class BukkitCommands implements Global {
             return false;
         }
 
-        // Add an executor to the command
-        command.setExecutor((sender, cmd, label, commandArgs) -> handler.execute(sender, label, commandArgs).asBoolean());
+        // Add an executor to the command, which enters the runtime like any other callback. A
+        // handler that fails or is interrupted has already been reported, so it doesn't show
+        // the usage message.
+        Profiler.Entry stats = this.executor.getProfiler().entry("command /" + name);
+        command.setExecutor((sender, cmd, label, commandArgs) -> {
+            boolean[] result = { true };
+            this.executor.executeSafely(stats.getSite(), () -> {
+                long start = System.nanoTime();
+                try {
+                    result[0] = handler.execute(sender, label, commandArgs).asBoolean();
+                } finally {
+                    stats.record(System.nanoTime() - start);
+                }
+            });
+            return result[0];
+        });
+        this.registeredCommands.add(command);
         return true;
     }
+
+    /**
+     * Defines a command at runtime from its argument tree, without it being in the plugin.yml
+     * file. Defining a command again replaces the earlier definition.
+     * @return false if another command already has the name, in which case the command is only
+     *         reachable under the plugin's name as the prefix
+     */
+    public Boolean jsDefine(Value... args) {
+        Value spec = args[0];
+        CommandNode root = new CommandNode(spec, true);
+
+        // Read the optional details shown in help listings
+        String description = spec.hasMember("description") && spec.getMember("description").isString()
+            ? spec.getMember("description").asString()
+            : "";
+        String usage = spec.hasMember("usage") && spec.getMember("usage").isString()
+            ? spec.getMember("usage").asString()
+            : "/" + root.name;
+        List<String> aliases = new ArrayList<>();
+        if (spec.hasMember("aliases") && spec.getMember("aliases").hasArrayElements()) {
+            Value values = spec.getMember("aliases");
+            for (long i = 0; i < values.getArraySize(); i++) {
+                aliases.add(values.getArrayElement(i).asString());
+            }
+        }
+
+        // Get the command map of the server
+        CommandMap commandMap = this.getCommandMap();
+        if (commandMap == null) {
+            throw new IllegalStateException("The server does not allow defining commands at runtime");
+        }
+
+        // Replace an earlier definition of the command
+        String key = root.name.toLowerCase(Locale.ROOT);
+        DynamicCommand previous = this.dynamicCommands.remove(key);
+        if (previous != null) {
+            this.unregister(commandMap, previous);
+        }
+
+        // Register the command, under the plugin's name as the fallback prefix
+        DynamicCommand command = new DynamicCommand(root, description, usage, aliases, this.executor, this.suggestions);
+        boolean registered = commandMap.register(this.plugin.getName().toLowerCase(Locale.ROOT), command);
+        this.dynamicCommands.put(key, command);
+        this.scheduleSync();
+        return registered;
+    }
+
+    /**
+     * Replaces a cached suggestion set, or removes it if the values are null. Scripts call this
+     * whenever the underlying data changes, so tab completion never has to enter the runtime.
+     */
+    public Object jsSuggestions(Value... args) {
+        String name = args[0].asString();
+        if (args.length < 2 || args[1].isNull()) {
+            this.suggestions.remove(name);
+            return null;
+        }
+        Value values = args[1];
+        List<String> set = new ArrayList<>((int) values.getArraySize());
+        for (long i = 0; i < values.getArraySize(); i++) {
+            set.add(values.getArrayElement(i).asString());
+        }
+        this.suggestions.put(name, List.copyOf(set));
+        return null;
+    }
+
+    /**
+     * Removes a dynamic command from the command map, including its aliases and prefixed labels
+     */
+    private void unregister(CommandMap commandMap, Command command) {
+        if (commandMap == null) return;
+        command.unregister(commandMap);
+        Map<String, Command> known = this.getKnownCommands(commandMap);
+        if (known != null) {
+            known.values().removeIf(value -> value == command);
+        }
+    }
+
+    /**
+     * Sends the updated command list to the players on the next tick, once for all the
+     * commands defined within the tick
+     */
+    private void scheduleSync() {
+        if (this.syncScheduled) return;
+        this.syncScheduled = true;
+        this.plugin.getServer().getScheduler().runTask(this.plugin, () -> {
+            this.syncScheduled = false;
+            this.syncCommands();
+        });
+    }
+
+    /**
+     * Sends the command list to the players, so that their clients know about changed
+     * commands. The Bukkit API has no method for this, so it is looked up on the server.
+     */
+    private void syncCommands() {
+        try {
+            Object server = this.plugin.getServer();
+            server.getClass().getMethod("syncCommands").invoke(server);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // Older servers only send the command list when players join
+        }
+    }
+
+    /**
+     * Gets the command map of the server, which the Bukkit API doesn't expose
+     * @return the command map, or null if the server doesn't have one
+     */
+    private CommandMap getCommandMap() {
+        try {
+            Object server = this.plugin.getServer();
+            return (CommandMap) server.getClass().getMethod("getCommandMap").invoke(server);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the labels known to the command map, which unregistering a command leaves behind
+     * @param commandMap the command map
+     * @return the known commands by label, or null if the command map doesn't have them
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Command> getKnownCommands(CommandMap commandMap) {
+        try {
+            return (Map<String, Command>) commandMap.getClass().getMethod("getKnownCommands").invoke(commandMap);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
 }
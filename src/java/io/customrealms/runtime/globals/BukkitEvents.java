@@ -1,9 +1,11 @@
 package io.customrealms.runtime.globals;
 
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.function.Consumer;
+import java.util.Map;
 import io.customrealms.runtime.Global;
 import io.customrealms.runtime.Logger;
+import io.customrealms.runtime.Profiler;
 import io.customrealms.runtime.RuntimeExecutor;
 import org.bukkit.Bukkit;
 import org.bukkit.event.Event;
@@ -15,8 +17,15 @@ import org.graalvm.polyglot.Value;
 import org.graalvm.polyglot.proxy.ProxyExecutable;
 
 class RegisteredHandlerData {
-    public Listener listener;
-    public Consumer<Event> func;
+    public Value handler;
+    public String site;
+    public Profiler.Entry stats;
+    public boolean ignoreCancelled;
+    public EventFilter filter;
+    public EventCoalescer coalescer;
+    public EventDispatcher dispatcher;
+    public int index;
+    public boolean removed;
 }
 
 public class BukkitEvents implements Global {
@@ -41,11 +50,16 @@ public class BukkitEvents implements Global {
     private int nextListenerHandle = 0;
 
     /**
-     * Each event handler registered spawns a separate Bukkit listener. They are
-     * all stored in this map, associated to the issued listener handle integer.
+     * All the registered event handlers, associated to the issued listener handle integer.
      */
     private final HashMap<Integer, RegisteredHandlerData> handlers = new HashMap<>();
 
+    /**
+     * There is a single Bukkit listener for each event class and priority, which dispatches
+     * the event to all the handlers registered for them.
+     */
+    private final HashMap<Class<? extends Event>, EnumMap<EventPriority, EventDispatcher>> dispatchers = new HashMap<>();
+
     public BukkitEvents(JavaPlugin plugin, RuntimeExecutor executor, Logger logger) {
         this.plugin = plugin;
         this.executor = executor;
@@ -55,42 +69,99 @@ public class BukkitEvents implements Global {
     public void init(Value bindings) {
         bindings.putMember("__events_register", (ProxyExecutable) this::jsRegister);
         bindings.putMember("__events_unregister", (ProxyExecutable) this::jsUnregister);
+        this.executor.getLeakTracker().track("event handlers", this::countHandlers);
+    }
+
+    /**
+     * Counts the registered handlers by the site that registered them
+     */
+    private Map<String, Integer> countHandlers() {
+        HashMap<String, Integer> counts = new HashMap<>();
+        for (RegisteredHandlerData registered_handle : this.handlers.values()) {
+            counts.merge(registered_handle.site, 1, Integer::sum);
+        }
+        return counts;
     }
 
     /**
      * Releases all the values tying the runtime to the plugin
      */
     public void release() {
-        // Clear the listeners
+        // Drop the events waiting for a coalesced delivery
         this.handlers.values().forEach(registered_handle -> {
-            HandlerList.unregisterAll(registered_handle.listener);
+            if (registered_handle.coalescer != null) registered_handle.coalescer.cancel();
         });
 
-        // Clear the map of handlers
+        // Clear the listeners
+        this.dispatchers.values().forEach(byPriority -> byPriority.values().forEach(HandlerList::unregisterAll));
+
+        // Clear the maps of dispatchers and handlers
+        this.dispatchers.clear();
         this.handlers.clear();
     }
 
-    @SuppressWarnings("unchecked")
     public Integer jsRegister(Value... args) {
         String eventClassName = args[0].asString();
         Value handler = args[1];
-
-        // Create the registered handle
-        final RegisteredHandlerData registered_handle = new RegisteredHandlerData();
-        registered_handle.listener = new Listener() {};
-        registered_handle.func = (Event event) -> {
-            handler.executeVoid(event);
-        };
+        Value options = args.length > 2 ? args[2] : null;
 
         // Resolve the class for the event type classpath
-        Class<Event> eventClass;
+        Class<? extends Event> eventClass;
         try {
-            eventClass = (Class<Event>) Class.forName(eventClassName);
-        } catch (ClassNotFoundException ex) {
+            eventClass = Class.forName(eventClassName).asSubclass(Event.class);
+        } catch (ClassNotFoundException | ClassCastException ex) {
             this.logger.log(Logger.LogType.ERROR, "Unrecognized event class: " + eventClassName);
             return null;
         }
 
+        // Read the registration options
+        EventPriority priority = EventPriority.NORMAL;
+        boolean ignoreCancelled = false;
+        EventFilter filter = null;
+        if (options != null && options.hasMembers()) {
+            if (options.hasMember("priority") && !options.getMember("priority").isNull()) {
+                String priorityName = options.getMember("priority").asString();
+                try {
+                    priority = EventPriority.valueOf(priorityName.toUpperCase());
+                } catch (IllegalArgumentException ex) {
+                    this.logger.log(Logger.LogType.ERROR, "Unrecognized event priority: " + priorityName);
+                    return null;
+                }
+            }
+            if (options.hasMember("ignoreCancelled") && !options.getMember("ignoreCancelled").isNull()) {
+                ignoreCancelled = options.getMember("ignoreCancelled").asBoolean();
+            }
+            if (options.hasMember("filter") && !options.getMember("filter").isNull()) {
+                try {
+                    filter = new EventFilter(options.getMember("filter"));
+                } catch (IllegalArgumentException ex) {
+                    this.logger.log(Logger.LogType.ERROR, "Invalid event filter: " + ex.getMessage());
+                    return null;
+                }
+            }
+        }
+
+        // Create the registered handle
+        RegisteredHandlerData registered_handle = new RegisteredHandlerData();
+        registered_handle.handler = handler;
+        registered_handle.site = eventClass.getSimpleName() + " handler at " + RuntimeExecutor.siteOf(handler);
+        registered_handle.stats = this.executor.getProfiler().entry(registered_handle.site);
+        registered_handle.ignoreCancelled = ignoreCancelled;
+        registered_handle.filter = filter;
+
+        // Read the coalescing options, which need the registered handle to deliver to
+        if (options != null && options.hasMember("coalesce") && !options.getMember("coalesce").isNull()) {
+            try {
+                registered_handle.coalescer = new EventCoalescer(this.plugin, this.executor, this.logger, registered_handle, options.getMember("coalesce"));
+            } catch (IllegalArgumentException ex) {
+                this.logger.log(Logger.LogType.ERROR, "Invalid event coalescing: " + ex.getMessage());
+                return null;
+            }
+        }
+
+        // Add it to the dispatcher for the event class and priority
+        this.getDispatcher(eventClass, priority).add(registered_handle);
+
         // Create the listener handle instance
         int handle = this.nextListenerHandle;
         this.nextListenerHandle++;
@@ -98,15 +169,6 @@ public class BukkitEvents implements Global {
         // Store the handler in the map
         this.handlers.put(handle, registered_handle);
 
-        // Register the event handler
-        Bukkit.getPluginManager().registerEvent(
-            eventClass,
-            registered_handle.listener,
-            EventPriority.NORMAL,
-            (Listener l, Event event) -> this.executor.executeSafely(() -> registered_handle.func.accept(event)),
-            this.plugin
-        );
-
         // Return the handle
         return handle;
     }
@@ -114,18 +176,57 @@ public class BukkitEvents implements Global {
     public Void jsUnregister(Value... args) {
         int handle = args[0].asInt();
 
-        // Get the handle index
-        if (!this.handlers.containsKey(handle)) return null;
-
-        // Get the registered handle
-        RegisteredHandlerData registered_handle = this.handlers.get(handle);
-
         // Remove the handle from the map
-        this.handlers.remove(handle);
+        RegisteredHandlerData registered_handle = this.handlers.remove(handle);
+        if (registered_handle == null) return null;
+
+        // Drop any events waiting for a coalesced delivery
+        if (registered_handle.coalescer != null) {
+            registered_handle.coalescer.cancel();
+        }
 
-        // Unregister the Bukkit listener
-        HandlerList.unregisterAll(registered_handle.listener);
+        // Remove the handler from its dispatcher
+        EventDispatcher dispatcher = registered_handle.dispatcher;
+        dispatcher.remove(registered_handle);
+
+        // Unregister the Bukkit listener once nothing is listening to it anymore
+        if (dispatcher.isEmpty()) {
+            EnumMap<EventPriority, EventDispatcher> byPriority = this.dispatchers.get(dispatcher.eventClass);
+            byPriority.remove(dispatcher.priority);
+            if (byPriority.isEmpty()) {
+                this.dispatchers.remove(dispatcher.eventClass);
+            }
+            HandlerList.unregisterAll(dispatcher);
+        }
         return null;
     }
 
+    /**
+     * Gets the dispatcher for an event class and priority, registering a new Bukkit listener
+     * if there isn't one yet
+     * @param eventClass the event class
+     * @param priority the event priority
+     * @return the dispatcher
+     */
+    private EventDispatcher getDispatcher(Class<? extends Event> eventClass, EventPriority priority) {
+        EnumMap<EventPriority, EventDispatcher> byPriority = this.dispatchers.computeIfAbsent(
+            eventClass,
+            key -> new EnumMap<>(EventPriority.class)
+        );
+        EventDispatcher dispatcher = byPriority.get(priority);
+        if (dispatcher != null) return dispatcher;
+
+        // Register the Bukkit listener for the dispatcher
+        EventDispatcher created = new EventDispatcher(eventClass, priority, this.executor.getTickBudget(), this.executor.getWatchdog(), this.logger);
+        byPriority.put(priority, created);
+        Bukkit.getPluginManager().registerEvent(
+            eventClass,
+            created,
+            priority,
+            (Listener l, Event event) -> this.executor.executeSafely(created.site, () -> created.dispatch(event)),
+            this.plugin
+        );
+        return created;
+    }
+
 }
@@ -0,0 +1,295 @@
+package io.customrealms.runtime.globals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import io.customrealms.runtime.Global;
+import io.customrealms.runtime.RuntimeExecutor;
+
+/**
+ * ChunkQueries searches regions of a world off the primary thread. The chunks of the region are
+ * captured as snapshots on the primary thread when the query is made, and scanned on a virtual
+ * thread, so a large scan only costs the capture on the tick. Chunks that have to be loaded are
+ * loaded a few per tick, and the scan starts once all of them are captured.
+ */
+public class ChunkQueries implements Global {
+    /**
+     * The maximum number of blocks returned by find, unless a limit is given
+     */
+    private static final int DEFAULT_FIND_LIMIT = 10000;
+
+    /**
+     * The maximum number of chunks loaded per tick, across all the queries. Loading a chunk
+     * may mean generating it, which can take tens of milliseconds.
+     */
+    private static final int CHUNK_LOADS_PER_TICK = 4;
+
+    /**
+     * The plugin the chunk loads are scheduled for
+     */
+    private final JavaPlugin plugin;
+
+    /**
+     * The runtime executor for this plugin.
+     */
+    private final RuntimeExecutor executor;
+
+    /**
+     * The regions with chunks left to load, in the order they were queried
+     */
+    private final ArrayDeque<ChunkRegion> loading = new ArrayDeque<>();
+
+    /**
+     * The task loading the chunks every tick, while there are any
+     */
+    private BukkitTask driver;
+
+    /**
+     * The constructors that wrap the coordinates found in an Int32Array without copying
+     */
+    private Value arrayBufferCtor;
+    private Value int32ArrayCtor;
+
+    public ChunkQueries(JavaPlugin plugin, RuntimeExecutor executor) {
+        this.plugin = plugin;
+        this.executor = executor;
+    }
+
+    public void init(Value bindings) {
+        this.arrayBufferCtor = bindings.getMember("ArrayBuffer");
+        this.int32ArrayCtor = bindings.getMember("Int32Array");
+
+        HashMap<String, Object> chunks = new HashMap<>();
+        chunks.put("find", this.executor.promiseFunction("__chunks.find", this::jsFind, this::toFindResult));
+        chunks.put("count", this.executor.promiseFunction("__chunks.count", this::jsCount, ProxyObject::fromMap));
+        chunks.put("bounds", this.executor.promiseFunction("__chunks.bounds", this::jsBounds, ProxyObject::fromMap));
+        chunks.put("biomes", this.executor.promiseFunction("__chunks.biomes", this::jsBiomes, ProxyObject::fromMap));
+        bindings.putMember("__chunks", ProxyObject.fromMap(chunks));
+    }
+
+    /**
+     * Releases all the values tying the runtime to the plugin
+     */
+    public void release() {
+        this.arrayBufferCtor = null;
+        this.int32ArrayCtor = null;
+
+        if (this.driver != null) {
+            this.driver.cancel();
+            this.driver = null;
+        }
+
+        // Fail the queries still loading, so their promises don't wait forever
+        for (ChunkRegion region : this.loading) {
+            region.captured.completeExceptionally(new IllegalStateException("The chunk query was cancelled"));
+        }
+        this.loading.clear();
+    }
+
+    private Supplier<HashMap<String, Object>> jsFind(Value... args) {
+        Set<Material> materials = ChunkQueries.parseMaterials(args[7]);
+        Value options = ChunkQueries.options(args, 8);
+        int limit = options != null && options.hasMember("limit") ? options.getMember("limit").asInt() : DEFAULT_FIND_LIMIT;
+        ChunkRegion region = this.capture(args, options, false);
+        return () -> {
+            region.captured.join();
+
+            // Collect the coordinates as x, y, z triples
+            int[][] coords = { new int[3 * Math.min(Math.max(limit, 0), 1024)] };
+            int[] count = new int[1];
+            boolean[] truncated = new boolean[1];
+            region.forEachBlock(materials, (x, y, z, material) -> {
+                if (count[0] >= limit) {
+                    truncated[0] = true;
+                    return false;
+                }
+                if (coords[0].length < 3 * (count[0] + 1)) {
+                    coords[0] = Arrays.copyOf(coords[0], coords[0].length * 2 + 3);
+                }
+                coords[0][3 * count[0]] = x;
+                coords[0][3 * count[0] + 1] = y;
+                coords[0][3 * count[0] + 2] = z;
+                count[0]++;
+                return true;
+            });
+
+            // Pack them in the byte order of typed arrays
+            ByteBuffer packed = ByteBuffer.allocateDirect(Math.max(1, count[0]) * 12).order(ByteOrder.nativeOrder());
+            packed.asIntBuffer().put(coords[0], 0, 3 * count[0]);
+            packed.limit(count[0] * 12);
+
+            HashMap<String, Object> result = new HashMap<>();
+            result.put("count", count[0]);
+            result.put("coords", packed);
+            result.put("truncated", truncated[0]);
+            result.put("skippedChunks", region.getSkippedChunks());
+            return result;
+        };
+    }
+
+    private Supplier<HashMap<String, Object>> jsCount(Value... args) {
+        Set<Material> materials = args.length > 7 && args[7].hasArrayElements() ? ChunkQueries.parseMaterials(args[7]) : null;
+        ChunkRegion region = this.capture(args, ChunkQueries.options(args, 8), false);
+        return () -> {
+            region.captured.join();
+            EnumMap<Material, Integer> counts = new EnumMap<>(Material.class);
+            region.forEachBlock(materials, (x, y, z, material) -> {
+                counts.merge(material, 1, Integer::sum);
+                return true;
+            });
+
+            HashMap<String, Object> result = new HashMap<>();
+            result.put("counts", ProxyObject.fromMap(ChunkQueries.byName(counts)));
+            result.put("skippedChunks", region.getSkippedChunks());
+            return result;
+        };
+    }
+
+    private Supplier<HashMap<String, Object>> jsBounds(Value... args) {
+        Set<Material> materials = ChunkQueries.parseMaterials(args[7]);
+        ChunkRegion region = this.capture(args, ChunkQueries.options(args, 8), false);
+        return () -> {
+            region.captured.join();
+            int[] bounds = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+            region.forEachBlock(materials, (x, y, z, material) -> {
+                bounds[0] = Math.min(bounds[0], x);
+                bounds[1] = Math.min(bounds[1], y);
+                bounds[2] = Math.min(bounds[2], z);
+                bounds[3] = Math.max(bounds[3], x);
+                bounds[4] = Math.max(bounds[4], y);
+                bounds[5] = Math.max(bounds[5], z);
+                return true;
+            });
+
+            HashMap<String, Object> result = new HashMap<>();
+            boolean found = bounds[0] != Integer.MAX_VALUE;
+            result.put("found", found);
+            if (found) {
+                result.put("minX", bounds[0]);
+                result.put("minY", bounds[1]);
+                result.put("minZ", bounds[2]);
+                result.put("maxX", bounds[3]);
+                result.put("maxY", bounds[4]);
+                result.put("maxZ", bounds[5]);
+            }
+            result.put("skippedChunks", region.getSkippedChunks());
+            return result;
+        };
+    }
+
+    private Supplier<HashMap<String, Object>> jsBiomes(Value... args) {
+        ChunkRegion region = this.capture(args, ChunkQueries.options(args, 7), true);
+        return () -> {
+            region.captured.join();
+            EnumMap<Biome, Integer> counts = new EnumMap<>(Biome.class);
+            region.forEachBiome(biome -> counts.merge(biome, 1, Integer::sum));
+
+            HashMap<String, Object> result = new HashMap<>();
+            result.put("counts", ProxyObject.fromMap(ChunkQueries.byName(counts)));
+            result.put("skippedChunks", region.getSkippedChunks());
+            return result;
+        };
+    }
+
+    /**
+     * Wraps the coordinates found in an Int32Array
+     */
+    private Object toFindResult(HashMap<String, Object> result) {
+        Value buffer = this.arrayBufferCtor.newInstance(result.get("coords"));
+        result.put("coords", this.int32ArrayCtor.newInstance(buffer));
+        return ProxyObject.fromMap(result);
+    }
+
+    /**
+     * Captures the region given by the world and box arguments. The chunks to load are queued,
+     * and the region is captured once they have been loaded.
+     */
+    private ChunkRegion capture(Value[] args, Value options, boolean biomes) {
+        World world = Bukkit.getWorld(args[0].asString());
+        if (world == null) {
+            throw new IllegalArgumentException("Unknown world: " + args[0].asString());
+        }
+        boolean load = options != null && options.hasMember("load") && options.getMember("load").asBoolean();
+        ChunkRegion region = new ChunkRegion(
+            world,
+            args[1].asInt(), args[2].asInt(), args[3].asInt(),
+            args[4].asInt(), args[5].asInt(), args[6].asInt(),
+            load, biomes
+        );
+        if (!region.captured.isDone()) {
+            this.loading.add(region);
+            if (this.driver == null) {
+                this.driver = Bukkit.getScheduler().runTaskTimer(this.plugin, this::tick, 1, 1);
+            }
+        }
+        return region;
+    }
+
+    private void tick() {
+        if (!this.loading.isEmpty()) {
+            this.executor.executeSafely("chunk loads", this::loadChunks);
+        }
+
+        // Stop ticking while there are no chunks to load
+        if (this.loading.isEmpty() && this.driver != null) {
+            this.driver.cancel();
+            this.driver = null;
+        }
+    }
+
+    /**
+     * Loads the chunks of the queried regions in order, up to the chunk loads per tick
+     */
+    private void loadChunks() {
+        int remaining = CHUNK_LOADS_PER_TICK;
+        while (remaining > 0 && !this.loading.isEmpty()) {
+            ChunkRegion region = this.loading.peek();
+            remaining -= region.loadChunks(remaining);
+            if (region.captured.isDone()) {
+                this.loading.poll();
+            }
+        }
+    }
+
+    private static Value options(Value[] args, int index) {
+        return args.length > index && args[index].hasMembers() ? args[index] : null;
+    }
+
+    private static Set<Material> parseMaterials(Value names) {
+        Set<Material> materials = new HashSet<>();
+        for (long i = 0; i < names.getArraySize(); i++) {
+            String name = names.getArrayElement(i).asString();
+            Material material = Material.matchMaterial(name);
+            if (material == null) {
+                throw new IllegalArgumentException("Unknown material: " + name);
+            }
+            materials.add(material);
+        }
+        return materials;
+    }
+
+    private static Map<String, Object> byName(EnumMap<? extends Enum<?>, Integer> counts) {
+        Map<String, Object> byName = new HashMap<>();
+        for (Map.Entry<? extends Enum<?>, Integer> entry : counts.entrySet()) {
+            byName.put(entry.getKey().name(), entry.getValue());
+        }
+        return byName;
+    }
+}
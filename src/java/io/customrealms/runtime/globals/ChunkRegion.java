@@ -0,0 +1,186 @@
+package io.customrealms.runtime.globals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+
+/**
+ * ChunkRegion is a box of blocks captured as chunk snapshots on the primary thread, which can
+ * then be scanned on any thread. The chunks that are loaded are captured right away, and the
+ * ones that have to be loaded first are captured a few at a time with loadChunks.
+ */
+class ChunkRegion {
+    /**
+     * Visits the blocks of a region
+     */
+    interface BlockVisitor {
+        /**
+         * @return false to stop visiting
+         */
+        boolean visit(int x, int y, int z, Material material);
+    }
+
+    /**
+     * The maximum number of chunks a region may overlap, since each one is captured on the
+     * primary thread and held in memory until the scan is done
+     */
+    static final int MAX_CHUNKS = 1024;
+
+    /**
+     * The inclusive bounds of the region
+     */
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    /**
+     * The snapshots of the loaded chunks overlapping the region
+     */
+    private final List<ChunkSnapshot> snapshots = new ArrayList<>();
+
+    /**
+     * The number of chunks overlapping the region that weren't loaded, and were left out
+     */
+    private int skippedChunks = 0;
+
+    /**
+     * The world of the region
+     */
+    private final World world;
+
+    /**
+     * Whether the biomes are captured
+     */
+    private final boolean biomes;
+
+    /**
+     * The coordinates of the chunks that still have to be loaded and captured
+     */
+    private final ArrayDeque<int[]> unloaded = new ArrayDeque<>();
+
+    /**
+     * Completes once all the chunks of the region have been captured
+     */
+    final CompletableFuture<Void> captured = new CompletableFuture<>();
+
+    /**
+     * Captures the loaded chunks overlapping a box. Must be called on the primary thread.
+     * @param world the world of the box
+     * @param load whether to queue the chunks that aren't loaded for loadChunks, rather than
+     *             leaving them out
+     * @param biomes whether to capture the biomes
+     * @throws IllegalArgumentException if the box overlaps more than the maximum number of chunks
+     */
+    ChunkRegion(World world, int x1, int y1, int z1, int x2, int y2, int z2, boolean load, boolean biomes) {
+        this.world = world;
+        this.biomes = biomes;
+        this.minX = Math.min(x1, x2);
+        this.maxX = Math.max(x1, x2);
+        this.minZ = Math.min(z1, z2);
+        this.maxZ = Math.max(z1, z2);
+        this.minY = Math.max(0, Math.min(y1, y2));
+        this.maxY = Math.min(world.getMaxHeight() - 1, Math.max(y1, y2));
+
+        // Reject boxes too large to capture before touching any chunk
+        long chunkCount = ((long) (this.maxX >> 4) - (this.minX >> 4) + 1) * ((long) (this.maxZ >> 4) - (this.minZ >> 4) + 1);
+        if (chunkCount > MAX_CHUNKS) {
+            throw new IllegalArgumentException("The region overlaps " + chunkCount + " chunks, more than the maximum of " + MAX_CHUNKS);
+        }
+
+        for (int chunkX = this.minX >> 4; chunkX <= this.maxX >> 4; chunkX++) {
+            for (int chunkZ = this.minZ >> 4; chunkZ <= this.maxZ >> 4; chunkZ++) {
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    this.snapshots.add(world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, biomes, false));
+                } else if (load) {
+                    this.unloaded.add(new int[] { chunkX, chunkZ });
+                } else {
+                    this.skippedChunks++;
+                }
+            }
+        }
+        if (this.unloaded.isEmpty()) {
+            this.captured.complete(null);
+        }
+    }
+
+    /**
+     * Loads and captures some of the chunks that weren't loaded. Must be called on the primary
+     * thread.
+     * @param count the maximum number of chunks to load
+     * @return the number of chunks loaded
+     */
+    int loadChunks(int count) {
+        int loaded = 0;
+        int[] chunk;
+        while (loaded < count && (chunk = this.unloaded.poll()) != null) {
+            this.snapshots.add(this.world.getChunkAt(chunk[0], chunk[1]).getChunkSnapshot(false, this.biomes, false));
+            loaded++;
+        }
+        if (this.unloaded.isEmpty()) {
+            this.captured.complete(null);
+        }
+        return loaded;
+    }
+
+    int getSkippedChunks() {
+        return this.skippedChunks;
+    }
+
+    /**
+     * Visits the blocks of the region, chunk by chunk. When looking for particular materials,
+     * the empty sections of the chunks are skipped, unless air is one of them.
+     * @param materials the materials being looked for, or null for any
+     * @param visitor visits the blocks of the materials
+     */
+    void forEachBlock(Set<Material> materials, BlockVisitor visitor) {
+        boolean skipEmpty = materials != null && materials.stream().noneMatch(Material::isAir);
+        for (ChunkSnapshot snapshot : this.snapshots) {
+            int baseX = snapshot.getX() << 4;
+            int baseZ = snapshot.getZ() << 4;
+            int fromX = Math.max(this.minX, baseX) - baseX;
+            int toX = Math.min(this.maxX, baseX + 15) - baseX;
+            int fromZ = Math.max(this.minZ, baseZ) - baseZ;
+            int toZ = Math.min(this.maxZ, baseZ + 15) - baseZ;
+
+            for (int y = this.minY; y <= this.maxY; y++) {
+                // Skip to the next section if this one is all air
+                if (skipEmpty && snapshot.isSectionEmpty(y >> 4)) {
+                    y = (y | 15);
+                    continue;
+                }
+                for (int z = fromZ; z <= toZ; z++) {
+                    for (int x = fromX; x <= toX; x++) {
+                        Material material = snapshot.getBlockType(x, y, z);
+                        if (materials != null && !materials.contains(material)) continue;
+                        if (!visitor.visit(baseX + x, y, baseZ + z, material)) return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits the biome of every block of the region. The region must have been captured with
+     * its biomes.
+     * @param visitor receives each biome
+     */
+    void forEachBiome(Consumer<Biome> visitor) {
+        for (ChunkSnapshot snapshot : this.snapshots) {
+            int baseX = snapshot.getX() << 4;
+            int baseZ = snapshot.getZ() << 4;
+            for (int y = this.minY; y <= this.maxY; y++) {
+                for (int z = Math.max(this.minZ, baseZ) - baseZ; z <= Math.min(this.maxZ, baseZ + 15) - baseZ; z++) {
+                    for (int x = Math.max(this.minX, baseX) - baseX; x <= Math.min(this.maxX, baseX + 15) - baseX; x++) {
+                        visitor.accept(snapshot.getBiome(x, y, z));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.customrealms.runtime.globals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+import org.graalvm.polyglot.Value;
+
+/**
+ * Columns packs a table of values into a single buffer, which JavaScript reads through typed
+ * arrays, one per column. Strings are joined into one string per column. The table crosses into
+ * JavaScript in a single call, however many rows and columns it has.
+ */
+class Columns {
+    /**
+     * The types of the numeric columns, named after the typed array that reads them
+     */
+    enum Type {
+        FLOAT64(8, "Float64Array"),
+        FLOAT32(4, "Float32Array"),
+        INT32(4, "Int32Array"),
+        INT8(1, "Int8Array");
+
+        final int size;
+        final String arrayType;
+
+        Type(int size, String arrayType) {
+            this.size = size;
+            this.arrayType = arrayType;
+        }
+    }
+
+    /**
+     * Builds the result object from the buffer and the descriptions of the columns. Views are
+     * aligned to 8 bytes, which suits every typed array.
+     */
+    static final String ASSEMBLER =
+        "(buffer, count, layout, strings) => {\n" +
+        "  const result = { count };\n" +
+        "  for (const column of layout.split(';')) {\n" +
+        "    if (!column) continue;\n" +
+        "    const [name, type, offset, length] = column.split(',');\n" +
+        "    result[name] = new globalThis[type](buffer, +offset, +length);\n" +
+        "  }\n" +
+        "  for (const column of strings.split('\\u0001')) {\n" +
+        "    if (!column) continue;\n" +
+        "    const [name, length, values] = column.split('\\u0002');\n" +
+        "    result[name] = +length ? values.split('\\u0000') : [];\n" +
+        "  }\n" +
+        "  return result;\n" +
+        "}";
+
+    /**
+     * The number of rows
+     */
+    private final int count;
+
+    /**
+     * The types and byte offsets of the numeric columns
+     */
+    private final ArrayList<Type> types = new ArrayList<>();
+    private final ArrayList<Integer> offsets = new ArrayList<>();
+
+    /**
+     * The description of the numeric columns, for the assembler
+     */
+    private final StringBuilder layout = new StringBuilder();
+
+    /**
+     * The string columns, for the assembler
+     */
+    private final StringBuilder strings = new StringBuilder();
+
+    /**
+     * The size of the buffer so far
+     */
+    private int size = 0;
+
+    /**
+     * The buffer, once allocated
+     */
+    private ByteBuffer buffer;
+
+    Columns(int count) {
+        this.count = count;
+    }
+
+    /**
+     * Adds a numeric column. Must be called before any value is put.
+     * @param name the name of the column in the result
+     * @param type the type of the column
+     * @return the index of the column
+     */
+    int add(String name, Type type) {
+        int offset = (this.size + 7) & ~7;
+        this.types.add(type);
+        this.offsets.add(offset);
+        this.layout.append(name).append(',').append(type.arrayType).append(',')
+            .append(offset).append(',').append(this.count).append(';');
+        this.size = offset + type.size * this.count;
+        return this.types.size() - 1;
+    }
+
+    /**
+     * Adds a string column. Values must not contain the control characters \u0000 to \u0002.
+     * @param name the name of the column in the result
+     * @param values the values of the column
+     */
+    void addStrings(String name, Iterable<String> values) {
+        StringBuilder joined = new StringBuilder();
+        int length = 0;
+        for (String value : values) {
+            if (length++ > 0) joined.append('\u0000');
+            joined.append(value);
+        }
+        this.strings.append(name).append('\u0002').append(length).append('\u0002').append(joined).append('\u0001');
+    }
+
+    void putDouble(int column, int row, double value) {
+        this.buffer().putDouble(this.offsets.get(column) + row * 8, value);
+    }
+
+    void putFloat(int column, int row, float value) {
+        this.buffer().putFloat(this.offsets.get(column) + row * 4, value);
+    }
+
+    void putInt(int column, int row, int value) {
+        this.buffer().putInt(this.offsets.get(column) + row * 4, value);
+    }
+
+    void putByte(int column, int row, byte value) {
+        this.buffer().put(this.offsets.get(column) + row, value);
+    }
+
+    /**
+     * Creates the JavaScript result object
+     * @param assembler the ASSEMBLER function, evaluated in the runtime's context
+     * @param arrayBufferCtor the ArrayBuffer constructor of the runtime's context
+     * @return the object with a typed array or string array per column, and the row count
+     */
+    Value build(Value assembler, Value arrayBufferCtor) {
+        Value arrayBuffer = arrayBufferCtor.newInstance(this.buffer());
+        return assembler.execute(arrayBuffer, this.count, this.layout.toString(), this.strings.toString());
+    }
+
+    /**
+     * Allocates the buffer on first use, in the byte order of typed arrays
+     */
+    private ByteBuffer buffer() {
+        if (this.buffer == null) {
+            this.buffer = ByteBuffer.allocateDirect(Math.max(this.size, 8)).order(ByteOrder.nativeOrder());
+        }
+        return this.buffer;
+    }
+}
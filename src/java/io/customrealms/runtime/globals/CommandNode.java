@@ -0,0 +1,259 @@
+package io.customrealms.runtime.globals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.graalvm.polyglot.Value;
+
+/**
+ * CommandNode is a node of the declarative argument tree of a dynamic command: either a literal
+ * word, or a typed argument. Arguments are parsed and validated in Java, so a command only
+ * enters the runtime once its input is known to be valid.
+ */
+class CommandNode {
+    /**
+     * The types of arguments
+     */
+    enum Type {
+        LITERAL,
+        STRING,
+        GREEDY,
+        INT,
+        NUMBER,
+        BOOLEAN,
+        CHOICE,
+        PLAYER,
+        WORLD
+    }
+
+    /**
+     * Thrown when an argument doesn't parse
+     */
+    static class ParseException extends Exception {
+        ParseException(String message) {
+            super(message);
+        }
+    }
+
+    final Type type;
+
+    /**
+     * The literal word, or the name of the argument in the parsed arguments
+     */
+    final String name;
+
+    /**
+     * The bounds of int and number arguments
+     */
+    private final double min, max;
+
+    /**
+     * The values of choice arguments
+     */
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * The name of the cached suggestion set completing the argument, or null
+     */
+    final String suggest;
+
+    /**
+     * The permission needed to use the node and the nodes below it, or null
+     */
+    final String permission;
+
+    /**
+     * The handler called when the input ends at this node, or null
+     */
+    final Value executes;
+
+    /**
+     * The nodes that can follow this one, literals first
+     */
+    final List<CommandNode> children = new ArrayList<>();
+
+    /**
+     * Reads a node and its children from their JavaScript description
+     * @param spec the description of the node
+     * @param root whether this is the command itself, rather than one of its arguments
+     */
+    CommandNode(Value spec, boolean root) {
+        if (root) {
+            this.type = Type.LITERAL;
+            this.name = spec.getMember("name").asString();
+        } else if (CommandNode.has(spec, "literal")) {
+            this.type = Type.LITERAL;
+            this.name = spec.getMember("literal").asString();
+        } else {
+            this.name = spec.getMember("name").asString();
+            this.type = CommandNode.has(spec, "type")
+                ? CommandNode.parseType(spec.getMember("type").asString(), this.name)
+                : Type.STRING;
+        }
+        this.min = CommandNode.has(spec, "min") ? spec.getMember("min").asDouble() : Double.NEGATIVE_INFINITY;
+        this.max = CommandNode.has(spec, "max") ? spec.getMember("max").asDouble() : Double.POSITIVE_INFINITY;
+        if (CommandNode.has(spec, "values")) {
+            Value values = spec.getMember("values");
+            for (long i = 0; i < values.getArraySize(); i++) {
+                this.values.add(values.getArrayElement(i).asString());
+            }
+        }
+        this.suggest = CommandNode.has(spec, "suggest") ? spec.getMember("suggest").asString() : null;
+        this.permission = CommandNode.has(spec, "permission") ? spec.getMember("permission").asString() : null;
+        this.executes = CommandNode.has(spec, "executes") && spec.getMember("executes").canExecute()
+            ? spec.getMember("executes")
+            : null;
+
+        if (this.type == Type.CHOICE && this.values.isEmpty()) {
+            throw new IllegalArgumentException("The choice argument " + this.name + " has no values");
+        }
+
+        // Literals are tried before arguments, whatever order they were declared in
+        if (CommandNode.has(spec, "children")) {
+            Value children = spec.getMember("children");
+            for (long i = 0; i < children.getArraySize(); i++) {
+                this.children.add(new CommandNode(children.getArrayElement(i), false));
+            }
+            this.children.sort((a, b) -> Boolean.compare(a.type != Type.LITERAL, b.type != Type.LITERAL));
+        }
+    }
+
+    /**
+     * Checks if the sender may use the node
+     */
+    boolean canUse(CommandSender sender) {
+        return this.permission == null || sender.hasPermission(this.permission);
+    }
+
+    /**
+     * Checks if the node consumes the rest of the input
+     */
+    boolean isGreedy() {
+        return this.type == Type.GREEDY;
+    }
+
+    /**
+     * Parses the input for this node
+     * @param input the word, or the rest of the input for greedy arguments
+     * @return the parsed value
+     * @throws ParseException if the input isn't valid for this node
+     */
+    Object parse(String input) throws ParseException {
+        switch (this.type) {
+            case LITERAL:
+                if (!input.equalsIgnoreCase(this.name)) throw new ParseException("Expected " + this.name);
+                return this.name;
+            case INT:
+                try {
+                    int value = Integer.parseInt(input);
+                    this.checkBounds(value);
+                    return value;
+                } catch (NumberFormatException ex) {
+                    throw new ParseException("Expected a whole number for " + this.name + ", got " + input);
+                }
+            case NUMBER:
+                try {
+                    double value = Double.parseDouble(input);
+                    if (Double.isNaN(value)) throw new NumberFormatException();
+                    this.checkBounds(value);
+                    return value;
+                } catch (NumberFormatException ex) {
+                    throw new ParseException("Expected a number for " + this.name + ", got " + input);
+                }
+            case BOOLEAN:
+                if (input.equalsIgnoreCase("true")) return true;
+                if (input.equalsIgnoreCase("false")) return false;
+                throw new ParseException("Expected true or false for " + this.name + ", got " + input);
+            case CHOICE:
+                for (String value : this.values) {
+                    if (value.equalsIgnoreCase(input)) return value;
+                }
+                throw new ParseException("Expected one of " + String.join(", ", this.values) + " for " + this.name + ", got " + input);
+            case PLAYER:
+                Player player = Bukkit.getPlayerExact(input);
+                if (player == null) throw new ParseException("No player named " + input + " is online");
+                return player;
+            case WORLD:
+                World world = Bukkit.getWorld(input);
+                if (world == null) throw new ParseException("No world named " + input);
+                return world;
+            default:
+                return input;
+        }
+    }
+
+    private void checkBounds(double value) throws ParseException {
+        if (value < this.min || value > this.max) {
+            throw new ParseException(this.name + " must be between " + CommandNode.format(this.min) + " and " + CommandNode.format(this.max));
+        }
+    }
+
+    /**
+     * Gets the completions of the node that aren't cached suggestion sets
+     * @return the completions, which are empty for free-form arguments
+     */
+    List<String> getCompletions() {
+        List<String> completions = new ArrayList<>();
+        switch (this.type) {
+            case LITERAL:
+                completions.add(this.name);
+                break;
+            case BOOLEAN:
+                completions.add("true");
+                completions.add("false");
+                break;
+            case CHOICE:
+                completions.addAll(this.values);
+                break;
+            case PLAYER:
+                for (Player player : Bukkit.getOnlinePlayers()) {
+                    completions.add(player.getName());
+                }
+                break;
+            case WORLD:
+                for (World world : Bukkit.getWorlds()) {
+                    completions.add(world.getName());
+                }
+                break;
+            default:
+                break;
+        }
+        return completions;
+    }
+
+    /**
+     * Describes the node for usage messages
+     */
+    String describe() {
+        if (this.type == Type.LITERAL) return this.name;
+        if (this.type == Type.CHOICE) return "<" + String.join("|", this.values) + ">";
+        return "<" + this.name + ">";
+    }
+
+    private static String format(double bound) {
+        return bound == Math.rint(bound) && !Double.isInfinite(bound) ? String.valueOf((long) bound) : String.valueOf(bound);
+    }
+
+    /**
+     * Reads the type of an argument
+     * @param type the name of the type
+     * @param name the name of the argument, for the error
+     * @throws IllegalArgumentException if there is no such type
+     */
+    private static Type parseType(String type, String name) {
+        try {
+            return Type.valueOf(type.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown argument type " + type + " for " + name);
+        }
+    }
+
+    private static boolean has(Value spec, String member) {
+        return spec.hasMember(member) && !spec.getMember(member).isNull();
+    }
+}
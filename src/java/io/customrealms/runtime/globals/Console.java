@@ -38,23 +38,30 @@ public class Console implements Global {
             if (i > 0) {
                 str.append("\t");
             }
-            str.append(args[i].isHostObject() ? args[i].asHostObject() : args[i].toString());
+            str.append(args[i].isHostObject() ? args[i].<Object>asHostObject() : args[i].toString());
         }
         return str.toString();
     }
 
+    /**
+     * Logs the arguments, only joining them if the logger would output them
+     */
+    private void log(Logger.LogType type, Value[] args) {
+        this.logger.log(type, () -> Console.joinLogArgs(args));
+    }
+
     private Object jsConsoleLog(Value... args) {
-        this.logger.log(Logger.LogType.LOG, Console.joinLogArgs(args));
+        this.log(Logger.LogType.LOG, args);
         return null;
     }
 
     private Object jsConsoleWarn(Value... args) {
-        this.logger.log(Logger.LogType.WARNING, Console.joinLogArgs(args));
+        this.log(Logger.LogType.WARNING, args);
         return null;
     }
 
     private Object jsConsoleError(Value... args) {
-        this.logger.log(Logger.LogType.ERROR, Console.joinLogArgs(args));
+        this.log(Logger.LogType.ERROR, args);
         return null;
     }
 }
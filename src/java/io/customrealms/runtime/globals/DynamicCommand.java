@@ -0,0 +1,166 @@
+package io.customrealms.runtime.globals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import io.customrealms.runtime.Profiler;
+import io.customrealms.runtime.RuntimeExecutor;
+
+/**
+ * DynamicCommand is a command registered at runtime in the server's command map. Its input is
+ * parsed against an argument tree in Java: invalid input is answered with a usage message
+ * without entering the runtime, and tab completions never enter the runtime at all.
+ */
+class DynamicCommand extends Command {
+    /**
+     * The argument tree, rooted at the command itself
+     */
+    private final CommandNode root;
+
+    /**
+     * The runtime executor the handlers are called with
+     */
+    private final RuntimeExecutor executor;
+
+    /**
+     * The cached suggestion sets, by name, which scripts replace as their data changes
+     */
+    private final Map<String, List<String>> suggestions;
+
+    /**
+     * The statistics of the handler calls
+     */
+    private final Profiler.Entry stats;
+
+    DynamicCommand(
+        CommandNode root,
+        String description,
+        String usage,
+        List<String> aliases,
+        RuntimeExecutor executor,
+        Map<String, List<String>> suggestions
+    ) {
+        super(root.name, description, usage, aliases);
+        this.root = root;
+        this.executor = executor;
+        this.suggestions = suggestions;
+        this.stats = executor.getProfiler().entry("command /" + root.name);
+        if (root.permission != null) {
+            this.setPermission(root.permission);
+        }
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String label, String[] args) {
+        if (!this.testPermission(sender)) return true;
+
+        // Walk the argument tree along the input
+        HashMap<String, Object> parsed = new HashMap<>();
+        StringBuilder path = new StringBuilder("/").append(label);
+        CommandNode node = this.root;
+        int index = 0;
+        while (index < args.length) {
+            CommandNode next = null;
+            String failure = null;
+            for (CommandNode child : node.children) {
+                if (!child.canUse(sender)) continue;
+                String input = child.isGreedy() ? String.join(" ", Arrays.copyOfRange(args, index, args.length)) : args[index];
+                try {
+                    Object value = child.parse(input);
+                    if (child.type != CommandNode.Type.LITERAL) parsed.put(child.name, value);
+                    next = child;
+                    break;
+                } catch (CommandNode.ParseException ex) {
+                    // Report the first argument that failed, rather than a literal mismatch
+                    if (failure == null && child.type != CommandNode.Type.LITERAL) failure = ex.getMessage();
+                }
+            }
+            if (next == null) {
+                sender.sendMessage(failure != null ? failure : "Unexpected argument: " + args[index]);
+                sender.sendMessage("Usage: " + DynamicCommand.usage(path, node, sender));
+                return true;
+            }
+            index = next.isGreedy() ? args.length : index + 1;
+            path.append(' ').append(next.describe());
+            node = next;
+        }
+        if (node.executes == null) {
+            sender.sendMessage("Usage: " + DynamicCommand.usage(path, node, sender));
+            return true;
+        }
+
+        // Only valid input enters the runtime
+        Value handler = node.executes;
+        this.executor.executeSafely(this.stats.getSite(), () -> {
+            long start = System.nanoTime();
+            try {
+                handler.executeVoid(sender, ProxyObject.fromMap(parsed), label);
+            } finally {
+                this.stats.record(System.nanoTime() - start);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String alias, String[] args) {
+        List<String> completions = new ArrayList<>();
+        if (!this.testPermissionSilent(sender)) return completions;
+
+        // Follow the words before the one being completed
+        CommandNode node = this.root;
+        for (int index = 0; index < args.length - 1; index++) {
+            CommandNode next = null;
+            for (CommandNode child : node.children) {
+                if (!child.canUse(sender)) continue;
+                if (child.isGreedy()) return completions;
+                try {
+                    child.parse(args[index]);
+                    next = child;
+                    break;
+                } catch (CommandNode.ParseException ignored) {
+                    // Try the next child
+                }
+            }
+            if (next == null) return completions;
+            node = next;
+        }
+
+        // Complete the last word from the children of the node reached
+        String prefix = args.length == 0 ? "" : args[args.length - 1].toLowerCase(Locale.ROOT);
+        for (CommandNode child : node.children) {
+            if (!child.canUse(sender)) continue;
+            List<String> candidates = new ArrayList<>(child.getCompletions());
+            if (child.suggest != null) {
+                candidates.addAll(this.suggestions.getOrDefault(child.suggest, List.of()));
+            }
+            for (String candidate : candidates) {
+                if (candidate.toLowerCase(Locale.ROOT).startsWith(prefix)) {
+                    completions.add(candidate);
+                }
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * Describes the ways the input can continue from a node
+     */
+    private static String usage(StringBuilder path, CommandNode node, CommandSender sender) {
+        List<String> next = new ArrayList<>();
+        for (CommandNode child : node.children) {
+            if (child.canUse(sender)) next.add(child.describe());
+        }
+        if (next.isEmpty()) return path.toString();
+        return path + " " + (next.size() == 1 ? next.get(0) : "(" + String.join(" | ", next) + ")");
+    }
+}
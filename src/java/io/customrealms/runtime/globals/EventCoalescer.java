@@ -0,0 +1,211 @@
+package io.customrealms.runtime.globals;
+
+import io.customrealms.runtime.Logger;
+import io.customrealms.runtime.RuntimeExecutor;
+import io.customrealms.runtime.Watchdog;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.entity.EntityEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * EventCoalescer delivers the events for a handler at most once per interval of ticks. Events
+ * are coalesced by a key, such as the player, and only the latest event for each key is
+ * delivered. The events are delivered after Bukkit has finished processing them, so cancelling
+ * them from the handler has no effect.
+ */
+class EventCoalescer {
+    /**
+     * The property of the event that events are coalesced by
+     */
+    enum Key {
+        PLAYER,
+        ENTITY,
+        WORLD,
+        NONE
+    }
+
+    /**
+     * The Java plugin we're running within
+     */
+    private final JavaPlugin plugin;
+
+    /**
+     * The runtime executor for this plugin.
+     */
+    private final RuntimeExecutor executor;
+
+    /**
+     * The logger for errors thrown by the handler
+     */
+    private final Logger logger;
+
+    /**
+     * The handler the coalesced events are delivered to
+     */
+    private final RegisteredHandlerData handler;
+
+    /**
+     * The property to coalesce events by
+     */
+    private final Key key;
+
+    /**
+     * The number of ticks between deliveries
+     */
+    private final long interval;
+
+    /**
+     * Whether to deliver all the coalesced events in a single array
+     */
+    private final boolean batch;
+
+    /**
+     * The latest event for each key since the last delivery, in order of first arrival
+     */
+    private LinkedHashMap<Object, Event> pending = new LinkedHashMap<>();
+
+    /**
+     * The scheduled delivery task, or null if nothing is pending
+     */
+    private BukkitTask task;
+
+    /**
+     * Parses the coalescing options from a JavaScript object
+     * @param plugin the Java plugin we're running within
+     * @param executor the runtime executor for this plugin
+     * @param logger the logger for errors thrown by the handler
+     * @param handler the handler to deliver the events to
+     * @param options the options object, with optional key, interval and batch members
+     * @throws IllegalArgumentException if the options contain an unrecognized value
+     */
+    EventCoalescer(JavaPlugin plugin, RuntimeExecutor executor, Logger logger, RegisteredHandlerData handler, Value options) {
+        this.plugin = plugin;
+        this.executor = executor;
+        this.logger = logger;
+        this.handler = handler;
+
+        Key key = Key.PLAYER;
+        long interval = 1;
+        boolean batch = false;
+        if (options.hasMembers()) {
+            if (options.hasMember("key") && !options.getMember("key").isNull()) {
+                String keyName = options.getMember("key").asString();
+                try {
+                    key = Key.valueOf(keyName.toUpperCase());
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("Unrecognized coalesce key: " + keyName);
+                }
+            }
+            if (options.hasMember("interval") && !options.getMember("interval").isNull()) {
+                interval = Math.max(1, options.getMember("interval").asLong());
+            }
+            if (options.hasMember("batch") && !options.getMember("batch").isNull()) {
+                batch = options.getMember("batch").asBoolean();
+            }
+        }
+        this.key = key;
+        this.interval = interval;
+        this.batch = batch;
+    }
+
+    /**
+     * Stores an event for the next delivery, replacing the previous event with the same key
+     * @param event the event to store
+     */
+    void offer(Event event) {
+        this.pending.put(this.getKey(event), event);
+        if (this.task == null) {
+            this.task = Bukkit.getScheduler().runTaskLater(this.plugin, this::deliver, this.interval);
+        }
+    }
+
+    /**
+     * Cancels the pending delivery, dropping the stored events
+     */
+    void cancel() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+        this.pending.clear();
+    }
+
+    /**
+     * Delivers the stored events to the handler
+     */
+    private void deliver() {
+        LinkedHashMap<Object, Event> events = this.pending;
+        this.pending = new LinkedHashMap<>();
+        this.task = null;
+        if (this.handler.removed || events.isEmpty()) return;
+
+        this.executor.executeSafely(this.handler.site, () -> {
+            long start = System.nanoTime();
+            try {
+                this.deliver(events);
+            } catch (Exception ex) {
+                // A runaway handler is disabled like a handler called by the dispatcher
+                if (!this.executor.getWatchdog().handleRunaway(this.handler.site, ex, () -> this.handler.removed = true)) {
+                    this.logger.logUnhandledException(ex);
+                }
+            } finally {
+                this.handler.stats.record(System.nanoTime() - start);
+            }
+        });
+    }
+
+    private void deliver(LinkedHashMap<Object, Event> events) {
+        if (this.batch) {
+            this.handler.handler.executeVoid(ProxyArray.fromList(new ArrayList<>(events.values())));
+            return;
+        }
+
+        // One failing event must not prevent the others from being delivered
+        for (Event event : events.values()) {
+            if (this.handler.removed) return;
+            try {
+                this.handler.handler.executeVoid(event);
+            } catch (Exception ex) {
+                // An interrupted delivery stops, and is handled around it
+                if (Watchdog.isRunaway(ex)) throw ex;
+                this.logger.logUnhandledException(ex);
+            }
+        }
+    }
+
+    /**
+     * Gets the key to coalesce an event by. Events that don't have the key property are all
+     * coalesced together.
+     */
+    private Object getKey(Event event) {
+        switch (this.key) {
+            case PLAYER:
+                Player player = EventFilter.getPlayer(event);
+                if (player != null) return player.getUniqueId();
+                break;
+            case ENTITY:
+                if (event instanceof EntityEvent) {
+                    Entity entity = ((EntityEvent) event).getEntity();
+                    return entity.getUniqueId();
+                }
+                break;
+            case WORLD:
+                World world = EventFilter.getWorld(event);
+                if (world != null) return world.getUID();
+                break;
+            case NONE:
+                break;
+        }
+        return Key.NONE;
+    }
+}
@@ -0,0 +1,175 @@
+package io.customrealms.runtime.globals;
+
+import io.customrealms.runtime.Logger;
+import io.customrealms.runtime.TickBudget;
+import io.customrealms.runtime.Watchdog;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+/**
+ * EventDispatcher is the single Bukkit listener for one event class at one priority. Each
+ * event is fanned out to all the JavaScript handlers registered for that pair, within a
+ * single entry into the runtime.
+ */
+class EventDispatcher implements Listener {
+    /**
+     * The event class this dispatcher listens for
+     */
+    final Class<? extends Event> eventClass;
+
+    /**
+     * The priority this dispatcher is registered at
+     */
+    final EventPriority priority;
+
+    /**
+     * Describes the dispatcher, for overrun reports
+     */
+    final String site;
+
+    /**
+     * The tick budget to report handler overruns to. Events can't be deferred, so the budget
+     * is only used to attribute overruns to a handler.
+     */
+    private final TickBudget budget;
+
+    /**
+     * The watchdog, which disables handlers it interrupts if it is set up to
+     */
+    private final Watchdog watchdog;
+
+    /**
+     * The logger for exceptions thrown by individual handlers
+     */
+    private final Logger logger;
+
+    /**
+     * The handlers, in registration order. Unregistered handlers leave a null slot behind,
+     * which is compacted away once most of the slots are empty.
+     */
+    private RegisteredHandlerData[] handlers = new RegisteredHandlerData[4];
+
+    /**
+     * The number of slots in use in the handlers array, including empty ones
+     */
+    private int size = 0;
+
+    /**
+     * The number of handlers still registered
+     */
+    private int live = 0;
+
+    EventDispatcher(Class<? extends Event> eventClass, EventPriority priority, TickBudget budget, Watchdog watchdog, Logger logger) {
+        this.eventClass = eventClass;
+        this.priority = priority;
+        this.site = eventClass.getSimpleName() + " dispatch";
+        this.budget = budget;
+        this.watchdog = watchdog;
+        this.logger = logger;
+    }
+
+    /**
+     * Adds a handler to the end of the dispatch order
+     * @param handler the handler to add
+     */
+    void add(RegisteredHandlerData handler) {
+        if (this.size == this.handlers.length) {
+            this.compact(this.live < this.size ? this.handlers.length : this.handlers.length * 2);
+        }
+        handler.dispatcher = this;
+        handler.index = this.size;
+        this.handlers[this.size++] = handler;
+        this.live++;
+    }
+
+    /**
+     * Removes a handler from the dispatcher in constant (amortized) time
+     * @param handler the handler to remove
+     */
+    void remove(RegisteredHandlerData handler) {
+        this.handlers[handler.index] = null;
+        handler.dispatcher = null;
+        handler.removed = true;
+        this.live--;
+        if (this.live * 2 < this.size) {
+            this.compact(this.handlers.length);
+        }
+    }
+
+    /**
+     * Checks if there are no handlers left in the dispatcher
+     * @return true if the dispatcher is empty
+     */
+    boolean isEmpty() {
+        return this.live == 0;
+    }
+
+    /**
+     * Moves the live handlers into a new array, so a dispatch in progress keeps iterating
+     * over the old one
+     * @param capacity the capacity of the new array
+     */
+    private void compact(int capacity) {
+        RegisteredHandlerData[] compacted = new RegisteredHandlerData[capacity];
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            RegisteredHandlerData handler = this.handlers[i];
+            if (handler == null) continue;
+            handler.index = count;
+            compacted[count++] = handler;
+        }
+        this.handlers = compacted;
+        this.size = count;
+    }
+
+    /**
+     * Dispatches an event to all the handlers. Must be called within the runtime. Handlers
+     * added during the dispatch do not receive the event, and handlers removed during the
+     * dispatch do not receive it either.
+     * @param event the event to dispatch
+     */
+    void dispatch(Event event) {
+        // Bukkit shares handler lists between some event classes
+        if (!this.eventClass.isInstance(event)) return;
+
+        RegisteredHandlerData[] snapshot = this.handlers;
+        int count = this.size;
+        for (int i = 0; i < count; i++) {
+            RegisteredHandlerData handler = snapshot[i];
+            if (handler == null || handler.removed) continue;
+
+            // Skip handlers that ignore cancelled events, including those cancelled by
+            // earlier handlers in this dispatch
+            if (handler.ignoreCancelled && event instanceof Cancellable && ((Cancellable) event).isCancelled()) {
+                continue;
+            }
+
+            // Skip handlers whose filter rejects the event, without entering the runtime
+            if (handler.filter != null && !handler.filter.matches(event)) {
+                continue;
+            }
+
+            // Coalesced handlers receive the event on a later tick instead
+            if (handler.coalescer != null) {
+                handler.coalescer.offer(event);
+                continue;
+            }
+
+            // One failing handler must not prevent the others from running
+            long start = System.nanoTime();
+            try {
+                handler.handler.executeVoid(event);
+            } catch (Exception ex) {
+                // A disabled handler is skipped, but stays in place so it can still be unregistered
+                if (!this.watchdog.handleRunaway(handler.site, ex, () -> handler.removed = true)) {
+                    this.logger.logUnhandledException(ex);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            handler.stats.record(elapsed);
+            this.budget.checkOverrun(handler.site, elapsed);
+        }
+    }
+}
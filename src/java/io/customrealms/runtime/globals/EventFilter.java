@@ -0,0 +1,187 @@
+package io.customrealms.runtime.globals;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.world.WorldEvent;
+import org.graalvm.polyglot.Value;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * EventFilter is a declarative filter for an event handler, which is evaluated in Java so that
+ * events the handler doesn't care about never enter the runtime. All of the given conditions
+ * must match. A condition on a property the event doesn't have never matches.
+ */
+class EventFilter {
+    /**
+     * The block materials to match, or null to match any
+     */
+    private EnumSet<Material> materials;
+
+    /**
+     * The world names to match, or null to match any
+     */
+    private HashSet<String> worlds;
+
+    /**
+     * The lowercase player names to match, or null to match any
+     */
+    private HashSet<String> playerNames;
+
+    /**
+     * The player unique IDs to match, or null to match any
+     */
+    private HashSet<UUID> playerIds;
+
+    /**
+     * Whether to only match move events that change the block position of the player
+     */
+    private boolean blockChanged;
+
+    /**
+     * Parses a filter from a JavaScript object
+     * @param value the filter object, with optional material, world, player and blockChanged members
+     * @throws IllegalArgumentException if the filter contains an unrecognized value
+     */
+    EventFilter(Value value) {
+        if (EventFilter.has(value, "material")) {
+            this.materials = EnumSet.noneOf(Material.class);
+            for (String name : EventFilter.readStrings(value.getMember("material"))) {
+                Material material = Material.matchMaterial(name);
+                if (material == null) {
+                    throw new IllegalArgumentException("Unrecognized material: " + name);
+                }
+                this.materials.add(material);
+            }
+        }
+        if (EventFilter.has(value, "world")) {
+            this.worlds = new HashSet<>(EventFilter.readStrings(value.getMember("world")));
+        }
+        if (EventFilter.has(value, "player")) {
+            this.playerNames = new HashSet<>();
+            this.playerIds = new HashSet<>();
+            for (String player : EventFilter.readStrings(value.getMember("player"))) {
+                try {
+                    this.playerIds.add(UUID.fromString(player));
+                } catch (IllegalArgumentException ex) {
+                    this.playerNames.add(player.toLowerCase());
+                }
+            }
+        }
+        if (EventFilter.has(value, "blockChanged")) {
+            this.blockChanged = value.getMember("blockChanged").asBoolean();
+        }
+    }
+
+    /**
+     * Checks if an event matches the filter
+     * @param event the event to check
+     * @return true if the handler should be called for the event
+     */
+    boolean matches(Event event) {
+        if (this.materials != null) {
+            Block block = EventFilter.getBlock(event);
+            if (block == null || !this.materials.contains(block.getType())) return false;
+        }
+        if (this.worlds != null) {
+            World world = EventFilter.getWorld(event);
+            if (world == null || !this.worlds.contains(world.getName())) return false;
+        }
+        if (this.playerNames != null) {
+            Player player = EventFilter.getPlayer(event);
+            if (player == null) return false;
+            if (!this.playerIds.contains(player.getUniqueId()) && !this.playerNames.contains(player.getName().toLowerCase())) {
+                return false;
+            }
+        }
+        if (this.blockChanged) {
+            if (!(event instanceof PlayerMoveEvent)) return false;
+            PlayerMoveEvent move = (PlayerMoveEvent) event;
+            if (!EventFilter.isBlockChange(move.getFrom(), move.getTo())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a filter member is set, treating null and undefined members as absent
+     */
+    private static boolean has(Value value, String member) {
+        return value.hasMember(member) && !value.getMember(member).isNull();
+    }
+
+    /**
+     * Checks if two locations are in different blocks
+     */
+    private static boolean isBlockChange(Location from, Location to) {
+        if (to == null) return false;
+        return from.getBlockX() != to.getBlockX()
+            || from.getBlockY() != to.getBlockY()
+            || from.getBlockZ() != to.getBlockZ()
+            || from.getWorld() != to.getWorld();
+    }
+
+    /**
+     * Gets the block an event is about, if any
+     */
+    static Block getBlock(Event event) {
+        if (event instanceof BlockEvent) return ((BlockEvent) event).getBlock();
+        if (event instanceof PlayerInteractEvent) return ((PlayerInteractEvent) event).getClickedBlock();
+        return null;
+    }
+
+    /**
+     * Gets the world an event happened in, if any
+     */
+    static World getWorld(Event event) {
+        if (event instanceof WorldEvent) return ((WorldEvent) event).getWorld();
+        if (event instanceof BlockEvent) return ((BlockEvent) event).getBlock().getWorld();
+        if (event instanceof PlayerEvent) return ((PlayerEvent) event).getPlayer().getWorld();
+        if (event instanceof EntityEvent) return ((EntityEvent) event).getEntity().getWorld();
+        return null;
+    }
+
+    /**
+     * Gets the player responsible for an event, if any
+     */
+    static Player getPlayer(Event event) {
+        if (event instanceof PlayerEvent) return ((PlayerEvent) event).getPlayer();
+        if (event instanceof BlockBreakEvent) return ((BlockBreakEvent) event).getPlayer();
+        if (event instanceof BlockPlaceEvent) return ((BlockPlaceEvent) event).getPlayer();
+        if (event instanceof EntityEvent) {
+            Entity entity = ((EntityEvent) event).getEntity();
+            return entity instanceof Player ? (Player) entity : null;
+        }
+        return null;
+    }
+
+    /**
+     * Reads a string or an array of strings
+     */
+    private static List<String> readStrings(Value value) {
+        List<String> result = new ArrayList<>();
+        if (value.hasArrayElements()) {
+            for (long i = 0; i < value.getArraySize(); i++) {
+                result.add(value.getArrayElement(i).asString());
+            }
+        } else if (!value.isNull()) {
+            result.add(value.asString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,270 @@
+package io.customrealms.runtime.globals;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FileCache keeps the contents of recently read files and directory listings in memory, up to
+ * a total size, evicting the least recently used entries first. The directories of the cached
+ * entries are watched, and entries are invalidated as soon as their file or directory changes.
+ */
+class FileCache {
+    /**
+     * The estimated memory used by an entry, besides its content
+     */
+    private static final long ENTRY_OVERHEAD = 64;
+
+    /**
+     * The maximum estimated memory used by all the entries
+     */
+    private final long maxBytes;
+
+    /**
+     * The entries in access order: file contents as strings, and directory listings as string
+     * arrays. Guarded by the cache.
+     */
+    private final LinkedHashMap<Path, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The estimated memory used by all the entries. Guarded by the cache.
+     */
+    private long bytes = 0;
+
+    /**
+     * Incremented on every invalidation, so a read racing with a change isn't cached. Guarded
+     * by the cache.
+     */
+    private long version = 0;
+
+    /**
+     * The watched directories, by their watch key. Guarded by the cache.
+     */
+    private final HashMap<WatchKey, Path> watched = new HashMap<>();
+
+    /**
+     * The counters of the cache
+     */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * The watch service for the directories of the cached entries
+     */
+    private final WatchService watcher;
+
+    /**
+     * Constructs a cache, and starts the thread watching its directories
+     * @param maxBytes the maximum estimated memory used by all the entries
+     * @throws IOException if the file system can't be watched
+     */
+    FileCache(long maxBytes) throws IOException {
+        this.maxBytes = maxBytes;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        Thread.ofVirtual().name("customrealms-file-cache").start(this::processEvents);
+    }
+
+    /**
+     * Gets the version to pass to put, before reading from disk
+     * @return the current version of the cache
+     */
+    synchronized long version() {
+        return this.version;
+    }
+
+    /**
+     * Gets a cached file content or directory listing
+     * @param path the normalized absolute path
+     * @param type the type of the entry: String for contents, String[] for listings
+     * @return the entry, or null on a miss
+     */
+    synchronized <T> T get(Path path, Class<T> type) {
+        Object entry = this.entries.get(path);
+        if (!type.isInstance(entry)) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return type.cast(entry);
+    }
+
+    /**
+     * Starts watching a directory for changes to its files and its listing. Must be called
+     * before reading an entry from disk, so changes made after the read are always noticed.
+     * @param dir the normalized absolute path of the directory
+     * @return true if the directory is watched, and its entries can be cached
+     */
+    boolean watchDirectory(Path dir) {
+        if (dir == null) return false;
+        synchronized (this) {
+            if (this.watched.containsValue(dir)) return true;
+        }
+        try {
+            WatchKey key = dir.register(
+                this.watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY
+            );
+            synchronized (this) {
+                this.watched.put(key, dir);
+            }
+            return true;
+        } catch (IOException | ClosedWatchServiceException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Caches a file content or directory listing, unless anything was invalidated since the
+     * read started
+     * @param path the normalized absolute path
+     * @param entry the content or listing
+     * @param version the version of the cache before the read started
+     */
+    synchronized void put(Path path, Object entry, long version) {
+        if (version != this.version) return;
+        long size = FileCache.sizeOf(entry);
+        if (size > this.maxBytes) return;
+
+        Object previous = this.entries.put(path, entry);
+        if (previous != null) this.bytes -= FileCache.sizeOf(previous);
+        this.bytes += size;
+
+        // Evict the least recently used entries until the cache fits
+        Iterator<Object> eldest = this.entries.values().iterator();
+        while (this.bytes > this.maxBytes && eldest.hasNext()) {
+            this.bytes -= FileCache.sizeOf(eldest.next());
+            eldest.remove();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Invalidates the content of a file or listing of a directory, and the listing of the
+     * directory containing it
+     * @param path the normalized absolute path that changed
+     */
+    synchronized void invalidate(Path path) {
+        this.version++;
+        this.remove(path);
+        if (path.getParent() != null) this.remove(path.getParent());
+    }
+
+    /**
+     * Invalidates all the entries within a directory
+     */
+    private synchronized void invalidateTree(Path dir) {
+        this.version++;
+        Iterator<Map.Entry<Path, Object>> iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Object> entry = iterator.next();
+            if (entry.getKey().startsWith(dir)) {
+                this.bytes -= FileCache.sizeOf(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void remove(Path path) {
+        Object removed = this.entries.remove(path);
+        if (removed != null) this.bytes -= FileCache.sizeOf(removed);
+    }
+
+    long getHits() {
+        return this.hits.get();
+    }
+
+    long getMisses() {
+        return this.misses.get();
+    }
+
+    long getEvictions() {
+        return this.evictions.get();
+    }
+
+    synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Stops watching the directories, and clears the cache
+     */
+    void close() {
+        try {
+            this.watcher.close();
+        } catch (IOException ignored) {
+            // The watch thread stops either way
+        }
+        synchronized (this) {
+            this.entries.clear();
+            this.watched.clear();
+            this.bytes = 0;
+        }
+    }
+
+    /**
+     * Invalidates entries as the watched directories report changes
+     */
+    private void processEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = this.watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+
+            Path dir;
+            synchronized (this) {
+                dir = this.watched.get(key);
+            }
+            if (dir == null) continue;
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    this.invalidateTree(dir);
+                } else {
+                    this.invalidate(dir.resolve((Path) event.context()));
+                }
+            }
+
+            // The directory itself is gone
+            if (!key.reset()) {
+                synchronized (this) {
+                    this.watched.remove(key);
+                }
+                this.invalidateTree(dir);
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory used by an entry
+     */
+    private static long sizeOf(Object entry) {
+        if (entry instanceof String) {
+            return ENTRY_OVERHEAD + 2L * ((String) entry).length();
+        }
+        long size = ENTRY_OVERHEAD;
+        for (String name : (String[]) entry) {
+            size += ENTRY_OVERHEAD + 2L * name.length();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,129 @@
+package io.customrealms.runtime.globals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * FileHandle is an open file that JavaScript streams through, one chunk at a time. Operations
+ * run on virtual threads, but always in the order they were requested, so a script can issue
+ * several writes without awaiting each of them.
+ */
+class FileHandle {
+    /**
+     * The number of bytes read by default
+     */
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The path of the file
+     */
+    final Path path;
+
+    /**
+     * The open channel to the file
+     */
+    private final FileChannel channel;
+
+    /**
+     * Called once the handle is closed
+     */
+    private final Runnable onClose;
+
+    /**
+     * Completes once the last requested operation has finished. Only accessed on the primary
+     * thread, where the operations are requested.
+     */
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+    FileHandle(Path path, FileChannel channel, Runnable onClose) {
+        this.path = path;
+        this.channel = channel;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Reads the next chunk of the file
+     * @param length the maximum number of bytes to read
+     * @return the operation, which returns the bytes read, or null at the end of the file
+     */
+    Supplier<ByteBuffer> read(int length) {
+        return this.ordered(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+            while (buffer.hasRemaining()) {
+                if (this.channel.read(buffer) < 0) break;
+            }
+            if (buffer.position() == 0 && length > 0) return null;
+            return buffer.flip();
+        });
+    }
+
+    /**
+     * Writes bytes at the current position of the file
+     * @param data the bytes to write
+     * @return the operation
+     */
+    Supplier<Void> write(ByteBuffer data) {
+        return this.ordered(() -> {
+            while (data.hasRemaining()) {
+                this.channel.write(data);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Gets the size of the file
+     * @return the operation, which returns the size in bytes
+     */
+    Supplier<Long> size() {
+        return this.ordered(this.channel::size);
+    }
+
+    /**
+     * Closes the file, after the operations requested before
+     * @return the operation
+     */
+    Supplier<Void> close() {
+        return this.ordered(() -> {
+            this.closeNow();
+            return null;
+        });
+    }
+
+    /**
+     * Closes the file immediately, failing any operation in progress
+     */
+    void closeNow() {
+        try {
+            this.channel.close();
+        } catch (IOException ignored) {
+            // The file is unusable either way
+        }
+        this.onClose.run();
+    }
+
+    /**
+     * Wraps an operation so it only starts after the previously requested operation
+     */
+    private <T> Supplier<T> ordered(Callable<T> operation) {
+        CompletableFuture<Void> previous = this.tail;
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        this.tail = done;
+        return () -> {
+            try {
+                previous.join();
+                return operation.call();
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            } finally {
+                done.complete(null);
+            }
+        };
+    }
+}
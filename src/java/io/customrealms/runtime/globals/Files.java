@@ -1,15 +1,24 @@
 package io.customrealms.runtime.globals;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CompletionException;
 import java.util.function.Supplier;
 
 import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
 import org.graalvm.polyglot.proxy.ProxyObject;
 
 import io.customrealms.runtime.Global;
@@ -21,51 +30,159 @@ public class Files implements Global {
      */
     private final RuntimeExecutor executor;
 
+    /**
+     * The JavaScript ArrayBuffer constructor, which wraps Java byte buffers without copying
+     */
+    private Value arrayBufferCtor;
+
+    /**
+     * The file handles that are still open
+     */
+    private final Set<FileHandle> openHandles = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The delayed writes, which are flushed when the runtime is released
+     */
+    private final WriteBehind writeBehind = new WriteBehind(this::writeFile);
+
+    /**
+     * The cache of file contents and directory listings, or null if caching is disabled
+     */
+    private final FileCache cache;
+
     public Files(RuntimeExecutor executor) {
+        this(executor, 0);
+    }
+
+    /**
+     * Constructs the files global with a read cache
+     * @param executor the runtime executor
+     * @param cacheBytes the maximum memory used by cached files, or 0 to disable the cache
+     */
+    public Files(RuntimeExecutor executor, long cacheBytes) {
         this.executor = executor;
+        this.cache = cacheBytes > 0 ? Files.createCache(cacheBytes) : null;
+    }
+
+    private static FileCache createCache(long maxBytes) {
+        try {
+            return new FileCache(maxBytes);
+        } catch (IOException ex) {
+            // Without a way to watch for changes, nothing can be cached safely
+            return null;
+        }
     }
 
     public void init(Value bindings) {
         HashMap<String, Object> files = new HashMap<>();
-        files.put("read", this.executor.promiseFunction(this::jsReadFile));
-        files.put("readdir", this.executor.promiseFunction(this::jsReadDir));
-        files.put("exists", this.executor.promiseFunction(this::jsExists));
-        files.put("remove", this.executor.promiseFunction(this::jsRemove));
-        files.put("mkdir", this.executor.promiseFunction(this::jsMkdir));
-        files.put("write", this.executor.promiseFunction(this::jsWriteFile));
+        files.put("read", this.executor.promiseFunction("__fs.read", this::jsReadFile));
+        files.put("readdir", this.executor.promiseFunction("__fs.readdir", this::jsReadDir));
+        files.put("exists", this.executor.promiseFunction("__fs.exists", this::jsExists));
+        files.put("remove", this.executor.promiseFunction("__fs.remove", this::jsRemove));
+        files.put("mkdir", this.executor.promiseFunction("__fs.mkdir", this::jsMkdir));
+        files.put("write", this.executor.promiseFunction("__fs.write", this::jsWriteFile));
+        files.put("size", this.executor.promiseFunction("__fs.size", this::jsSize));
+        files.put("readBytes", this.executor.promiseFunction("__fs.readBytes", this::jsReadBytes, this::toArrayBuffer));
+        files.put("writeBytes", this.executor.promiseFunction("__fs.writeBytes", this::jsWriteBytes));
+        files.put("map", this.executor.promiseFunction("__fs.map", this::jsMap, this::toArrayBuffer));
+        files.put("open", this.executor.promiseFunction("__fs.open", this::jsOpen, this::toHandleObject));
+        files.put("cacheStats", (ProxyExecutable) this::jsCacheStats);
 
+        this.arrayBufferCtor = bindings.getMember("ArrayBuffer");
         bindings.putMember("__fs", ProxyObject.fromMap(files));
+        this.executor.getLeakTracker().track("file handles", () -> Map.of("__fs.open", this.openHandles.size()));
     }
 
     /**
      * Releases all the values tying the runtime to the plugin
      */
-    public void release() {}
+    public void release() {
+        this.writeBehind.flushAll();
+        for (FileHandle handle : this.openHandles) {
+            handle.closeNow();
+        }
+        if (this.cache != null) {
+            this.cache.close();
+        }
+        this.arrayBufferCtor = null;
+    }
+
+    /**
+     * Invalidates the cached entries for a path the runtime has changed. The watch service
+     * would notice too, but only after the change has been reported back to the script.
+     */
+    private void changed(Path path) {
+        if (this.cache != null) {
+            this.cache.invalidate(path.toAbsolutePath().normalize());
+        }
+    }
+
+    private Object jsCacheStats(Value... args) {
+        HashMap<String, Object> stats = new HashMap<>();
+        stats.put("enabled", this.cache != null);
+        stats.put("hits", this.cache == null ? 0 : this.cache.getHits());
+        stats.put("misses", this.cache == null ? 0 : this.cache.getMisses());
+        stats.put("evictions", this.cache == null ? 0 : this.cache.getEvictions());
+        stats.put("entries", this.cache == null ? 0 : this.cache.getEntryCount());
+        stats.put("bytes", this.cache == null ? 0 : this.cache.getBytes());
+        return ProxyObject.fromMap(stats);
+    }
 
     private Supplier<String> jsReadFile(Value... args) {
         String path = args[0].asString();
         return () -> {
             try {
-                Path file = Path.of(path);
-                if (!java.nio.file.Files.isRegularFile(file)) {
-                    return null;
+                Path file = Path.of(path).toAbsolutePath().normalize();
+                if (this.cache == null) {
+                    return Files.readFile(file);
                 }
-                return java.nio.file.Files.readString(file, StandardCharsets.UTF_8);
+
+                // Serve repeat reads from the cache, which is invalidated when the file changes
+                String cached = this.cache.get(file, String.class);
+                if (cached != null) return cached;
+                long version = this.cache.version();
+                boolean cacheable = this.cache.watchDirectory(file.getParent());
+                String content = Files.readFile(file);
+                if (cacheable && content != null) this.cache.put(file, content, version);
+                return content;
             } catch (IOException e) {
                 throw new CompletionException(e);
             }
         };
     }
 
+    private static String readFile(Path file) throws IOException {
+        if (!java.nio.file.Files.isRegularFile(file)) {
+            return null;
+        }
+        return java.nio.file.Files.readString(file, StandardCharsets.UTF_8);
+    }
+
     private Supplier<String[]> jsReadDir(Value... args) {
         String path = args[0].asString();
         return () -> {
-            File file = new File(path);
-            if (!file.exists() || !file.isDirectory()) return null;
-            return file.list();
+            File file = new File(path).getAbsoluteFile();
+            if (this.cache == null) {
+                return Files.readDir(file);
+            }
+
+            // The listing is copied, because scripts can modify the array they receive
+            Path dir = file.toPath().normalize();
+            String[] cached = this.cache.get(dir, String[].class);
+            if (cached != null) return cached.clone();
+            long version = this.cache.version();
+            boolean cacheable = this.cache.watchDirectory(dir);
+            String[] names = Files.readDir(file);
+            if (cacheable && names != null) this.cache.put(dir, names.clone(), version);
+            return names;
         };
     }
 
+    private static String[] readDir(File file) {
+        if (!file.exists() || !file.isDirectory()) return null;
+        return file.list();
+    }
+
     private Supplier<Boolean> jsExists(Value... args) {
         String path = args[0].asString();
         return () -> {
@@ -80,6 +197,7 @@ public class Files implements Global {
             File file = new File(path);
             if (!file.exists()) return null;
             file.delete();
+            this.changed(file.toPath());
             return null;
         };
     }
@@ -89,27 +207,248 @@ public class Files implements Global {
         boolean recursive = args[1].asBoolean();
         return () -> {
             File dir = new File(path);
-            if (recursive) {
-                return dir.mkdirs();
-            } else {
-                return dir.mkdir();
-            }
+            boolean created = recursive ? dir.mkdirs() : dir.mkdir();
+            if (created) this.changed(dir.toPath());
+            return created;
         };
     }
 
     private Supplier<Void> jsWriteFile(Value... args) {
-        String path = args[0].asString();
+        Path path = Path.of(args[0].asString()).toAbsolutePath().normalize();
         String content = args[1].asString();
-        return () -> {  
+
+        // Read the write options
+        boolean atomic = false;
+        long writeBehindMillis = 0;
+        if (args.length > 2 && args[2].hasMembers()) {
+            Value atomicValue = args[2].getMember("atomic");
+            Value writeBehindValue = args[2].getMember("writeBehind");
+            atomic = atomicValue != null && !atomicValue.isNull() && atomicValue.asBoolean();
+            if (writeBehindValue != null && !writeBehindValue.isNull()) {
+                writeBehindMillis = writeBehindValue.asLong();
+            }
+        }
+
+        // Writes are ordered by file when they are called, here on the primary thread
+        return this.writeBehind.write(path, content, atomic, writeBehindMillis);
+    }
+
+    /**
+     * Writes text to a file as UTF-8. An atomic write goes to a temporary file in the same
+     * directory, which is synced to disk and then renamed over the target, so a crash leaves
+     * either the old or the new content behind, never a mix.
+     * @param path the file to write
+     * @param content the text to write
+     * @param atomic whether to replace the file atomically
+     * @throws IOException if the write fails
+     */
+    private void writeFile(Path path, String content, boolean atomic) throws IOException {
+        try {
+            Files.writeFile(path, content.getBytes(StandardCharsets.UTF_8), atomic);
+        } finally {
+            this.changed(path);
+        }
+    }
+
+    private static void writeFile(Path path, byte[] bytes, boolean atomic) throws IOException {
+        if (!atomic) {
+            java.nio.file.Files.write(path, bytes);
+            return;
+        }
+
+        Path dir = path.getParent();
+        Path temp = java.nio.file.Files.createTempFile(dir, "." + path.getFileName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
             try {
-                File file = new File(path);
-                FileWriter writer = new FileWriter(file);
-                writer.write(content);
-                writer.close();
+                java.nio.file.Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                java.nio.file.Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            java.nio.file.Files.deleteIfExists(temp);
+        }
+
+        // Sync the directory so the rename itself survives a crash, where the platform allows it
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ignored) {
+            // Not every platform can open a directory as a channel
+        }
+    }
+
+    private Supplier<Long> jsSize(Value... args) {
+        String path = args[0].asString();
+        return () -> {
+            File file = new File(path);
+            if (!file.isFile()) return null;
+            return file.length();
+        };
+    }
+
+    private Supplier<ByteBuffer> jsReadBytes(Value... args) {
+        String path = args[0].asString();
+        long offset = Files.optionalLong(args, 1, 0);
+        long length = Files.optionalLong(args, 2, -1);
+        return () -> {
+            Path file = Path.of(path);
+            if (!java.nio.file.Files.isRegularFile(file)) return null;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // Read up to the requested length, or the end of the file
+                long available = Math.max(0, channel.size() - offset);
+                ByteBuffer buffer = ByteBuffer.allocateDirect(Math.toIntExact(length < 0 ? available : Math.min(length, available)));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) break;
+                }
+                return buffer.flip();
+            } catch (IOException | ArithmeticException e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    private Supplier<Void> jsWriteBytes(Value... args) {
+        String path = args[0].asString();
+        ByteBuffer data = Files.bytesOf(args[1]);
+        long offset = Files.optionalLong(args, 2, -1);
+        return () -> {
+            // Without an offset the file is replaced, otherwise the range is overwritten in place
+            OpenOption[] options = offset < 0
+                ? new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING }
+                : new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE };
+            try (FileChannel channel = FileChannel.open(Path.of(path), options)) {
+                long position = Math.max(0, offset);
+                while (data.hasRemaining()) {
+                    position += channel.write(data, position);
+                }
                 return null;
             } catch (IOException e) {
                 throw new CompletionException(e);
+            } finally {
+                this.changed(Path.of(path));
             }
         };
     }
+
+    private Supplier<ByteBuffer> jsMap(Value... args) {
+        String path = args[0].asString();
+        long offset = Files.optionalLong(args, 1, 0);
+        long length = Files.optionalLong(args, 2, -1);
+        return () -> {
+            Path file = Path.of(path);
+            if (!java.nio.file.Files.isRegularFile(file)) return null;
+
+            // The mapping stays valid after the channel is closed, until it is garbage collected
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long available = Math.max(0, channel.size() - offset);
+                return channel.map(FileChannel.MapMode.READ_ONLY, offset, length < 0 ? available : Math.min(length, available));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    private Supplier<FileHandle> jsOpen(Value... args) {
+        String path = args[0].asString();
+        String mode = args.length > 1 && !args[1].isNull() ? args[1].asString() : "r";
+        OpenOption[] options;
+        switch (mode) {
+            case "r":
+                options = new OpenOption[] { StandardOpenOption.READ };
+                break;
+            case "w":
+                options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
+                break;
+            case "a":
+                options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND };
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown file mode: " + mode);
+        }
+        return () -> {
+            try {
+                FileChannel channel = FileChannel.open(Path.of(path), options);
+                FileHandle[] handle = new FileHandle[1];
+                handle[0] = new FileHandle(Path.of(path), channel, () -> this.openHandles.remove(handle[0]));
+                if (!mode.equals("r")) this.changed(Path.of(path));
+                this.openHandles.add(handle[0]);
+                return handle[0];
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    /**
+     * Creates the JavaScript object for an open file handle
+     */
+    private Object toHandleObject(FileHandle handle) {
+        HashMap<String, Object> object = new HashMap<>();
+        object.put("read", this.executor.promiseFunction("__fs.handle.read", args -> handle.read(
+            Math.toIntExact(Files.optionalLong(args, 0, FileHandle.DEFAULT_CHUNK_SIZE))
+        ), this::toArrayBuffer));
+        object.put("write", this.executor.promiseFunction("__fs.handle.write", args -> {
+            Supplier<Void> write = handle.write(Files.bytesOf(args[0]));
+            return () -> {
+                try {
+                    return write.get();
+                } finally {
+                    this.changed(handle.path);
+                }
+            };
+        }));
+        object.put("size", this.executor.promiseFunction("__fs.handle.size", args -> handle.size()));
+        object.put("close", this.executor.promiseFunction("__fs.handle.close", args -> handle.close()));
+        return ProxyObject.fromMap(object);
+    }
+
+    /**
+     * Wraps a byte buffer in a JavaScript ArrayBuffer, which shares its memory
+     */
+    private Object toArrayBuffer(ByteBuffer buffer) {
+        if (buffer == null) return null;
+        return this.arrayBufferCtor.newInstance(buffer);
+    }
+
+    /**
+     * Copies the bytes of a JavaScript value: an ArrayBuffer, a typed array or DataView, or
+     * a string, which is encoded as UTF-8. Must be called on the primary thread.
+     * @param data the value to copy
+     * @return the bytes, ready to be written
+     */
+    private static ByteBuffer bytesOf(Value data) {
+        if (data.isString()) {
+            return ByteBuffer.wrap(data.asString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Typed arrays and DataViews are views into an ArrayBuffer
+        long offset = 0;
+        Value buffer = data;
+        if (!data.hasBufferElements() && data.hasMember("buffer")) {
+            buffer = data.getMember("buffer");
+            offset = data.getMember("byteOffset").asLong();
+        }
+        if (!buffer.hasBufferElements()) {
+            throw new IllegalArgumentException("Expected an ArrayBuffer, a typed array or a string");
+        }
+        long length = buffer == data ? buffer.getBufferSize() : data.getMember("byteLength").asLong();
+
+        byte[] bytes = new byte[Math.toIntExact(length)];
+        buffer.readBuffer(offset, bytes, 0, bytes.length);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Gets an optional integer argument
+     */
+    private static long optionalLong(Value[] args, int index, long defaultValue) {
+        if (args.length <= index || args[index].isNull()) return defaultValue;
+        return args[index].asLong();
+    }
 }
@@ -0,0 +1,317 @@
+package io.customrealms.runtime.globals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * KeyValueLog is the append-only file behind a key-value store. Each record is a put or a
+ * delete of one key, prefixed with its length and checksum, so a record torn by a crash is
+ * detected and discarded when the log is loaded. Records are queued in order by the primary
+ * thread, and appended in batches with a single sync by whichever I/O thread flushes first.
+ */
+class KeyValueLog {
+    /**
+     * The record types
+     */
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    /**
+     * The size of the length and checksum before every record
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The number of records below which the log is never compacted
+     */
+    private static final long MIN_COMPACT_RECORDS = 1024;
+
+    /**
+     * A record waiting to be appended
+     */
+    private static final class Queued {
+        final ByteBuffer record;
+        final CompletableFuture<Void> appended = new CompletableFuture<>();
+
+        Queued(ByteBuffer record) {
+            this.record = record;
+        }
+    }
+
+    /**
+     * The path of the log file
+     */
+    private final Path path;
+
+    /**
+     * The records waiting to be appended, in order. Guarded by the queue itself.
+     */
+    private final ArrayList<Queued> queue = new ArrayList<>();
+
+    /**
+     * Guards the channel and the record count, so one batch is appended at a time
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * The channel the records are appended to
+     */
+    private FileChannel channel;
+
+    /**
+     * The number of records in the log file
+     */
+    private long records = 0;
+
+    /**
+     * Whether the log has been closed
+     */
+    private boolean closed = false;
+
+    /**
+     * Opens the log, and loads its records into a map
+     * @param path the path of the log file, created if it doesn't exist
+     * @param into the map to apply the records to
+     * @throws IOException if the log can't be read or opened
+     */
+    KeyValueLog(Path path, Map<String, String> into) throws IOException {
+        this.path = path;
+        java.nio.file.Files.createDirectories(path.toAbsolutePath().getParent());
+        long valid = this.load(into);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+        // Discard a record torn by a crash, so new records are appended after the last valid one
+        this.channel.truncate(valid);
+        this.channel.position(valid);
+    }
+
+    /**
+     * Queues a put record. Must be called on the primary thread, in the order of the changes.
+     * @return completes once the record has been appended
+     */
+    CompletableFuture<Void> queuePut(String key, String value) {
+        return this.queue(KeyValueLog.encode(PUT, key, value));
+    }
+
+    /**
+     * Queues a delete record. Must be called on the primary thread, in the order of the changes.
+     * @return completes once the record has been appended
+     */
+    CompletableFuture<Void> queueDelete(String key) {
+        return this.queue(KeyValueLog.encode(DELETE, key, null));
+    }
+
+    private CompletableFuture<Void> queue(ByteBuffer record) {
+        Queued queued = new Queued(record);
+        synchronized (this.queue) {
+            this.queue.add(queued);
+        }
+        return queued.appended;
+    }
+
+    /**
+     * Appends all the queued records, and syncs them to disk
+     */
+    void flush() {
+        synchronized (this.writeLock) {
+            if (this.closed) return;
+            ArrayList<Queued> batch;
+            synchronized (this.queue) {
+                if (this.queue.isEmpty()) return;
+                batch = new ArrayList<>(this.queue);
+                this.queue.clear();
+            }
+
+            try {
+                this.append(batch);
+                this.records += batch.size();
+                for (Queued queued : batch) {
+                    queued.appended.complete(null);
+                }
+            } catch (IOException ex) {
+                for (Queued queued : batch) {
+                    queued.appended.completeExceptionally(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a batch of records with a single gathered write, and syncs it to disk. An
+     * interrupt would close the channel and lose the batch, so the interrupt is held back while
+     * writing. If the channel is closed by an interrupt anyway, it is reopened and the batch is
+     * written again from where it started.
+     */
+    private void append(ArrayList<Queued> batch) throws IOException {
+        boolean interrupted = Thread.interrupted();
+        try {
+            long start = this.channel.position();
+            try {
+                this.write(batch);
+            } catch (ClosedByInterruptException ex) {
+                // Discard the partly written batch, and write it again
+                interrupted |= Thread.interrupted();
+                this.channel = FileChannel.open(this.path, StandardOpenOption.WRITE);
+                this.channel.truncate(start);
+                this.channel.position(start);
+                for (Queued queued : batch) {
+                    queued.record.rewind();
+                }
+                this.write(batch);
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(ArrayList<Queued> batch) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = batch.get(i).record;
+        }
+        while (buffers[buffers.length - 1].hasRemaining()) {
+            this.channel.write(buffers);
+        }
+        this.channel.force(false);
+    }
+
+    /**
+     * Checks if most of the records in the log are overwritten or deleted keys
+     * @param liveKeys the number of keys in the store
+     * @return true if the log should be compacted
+     */
+    boolean shouldCompact(int liveKeys) {
+        synchronized (this.writeLock) {
+            return this.records > MIN_COMPACT_RECORDS && this.records > 2L * liveKeys;
+        }
+    }
+
+    /**
+     * Rewrites the log with a single put for each key. Changes made during the compaction are
+     * queued, and appended to the compacted log afterwards, where replaying them again is
+     * harmless.
+     * @param entries the current entries of the store, which can change while being iterated
+     * @throws IOException if the compacted log can't be written
+     */
+    void compact(Iterable<Map.Entry<String, String>> entries) throws IOException {
+        synchronized (this.writeLock) {
+            if (this.closed) return;
+            Path temp = this.path.resolveSibling(this.path.getFileName() + ".compact");
+            long count = 0;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Map.Entry<String, String> entry : entries) {
+                    ByteBuffer record = KeyValueLog.encode(PUT, entry.getKey(), entry.getValue());
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                    count++;
+                }
+                out.force(false);
+            }
+
+            // Replace the log, and append to the compacted one from now on
+            try {
+                java.nio.file.Files.move(temp, this.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                java.nio.file.Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            this.channel.close();
+            this.channel = FileChannel.open(this.path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.records = count;
+        }
+    }
+
+    /**
+     * Appends the queued records and closes the log
+     */
+    void close() {
+        synchronized (this.writeLock) {
+            this.flush();
+            this.closed = true;
+            try {
+                this.channel.close();
+            } catch (IOException ignored) {
+                // Every record has been synced already
+            }
+        }
+    }
+
+    /**
+     * Applies the records in the log file to a map
+     * @return the length of the valid records at the start of the file
+     */
+    private long load(Map<String, String> into) throws IOException {
+        if (!java.nio.file.Files.isRegularFile(this.path)) return 0;
+        ByteBuffer buffer = ByteBuffer.wrap(java.nio.file.Files.readAllBytes(this.path));
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 5 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+
+            // Stop at the first record that doesn't match its checksum
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+
+            byte type = buffer.get();
+            int keyLength = buffer.getInt();
+            if (keyLength < 0 || keyLength > length - 5) {
+                buffer.position(start);
+                break;
+            }
+            String key = new String(buffer.array(), buffer.position(), keyLength, StandardCharsets.UTF_8);
+            int valueLength = length - 5 - keyLength;
+            String value = new String(buffer.array(), buffer.position() + keyLength, valueLength, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + keyLength + valueLength);
+
+            if (type == PUT) {
+                into.put(key, value);
+            } else {
+                into.remove(key);
+            }
+            this.records++;
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Encodes a record, including its length and checksum
+     */
+    private static ByteBuffer encode(byte type, String key, String value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 4 + keyBytes.length + valueBytes.length;
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+        record.putInt(length);
+        record.putInt(0);
+        record.put(type);
+        record.putInt(keyBytes.length);
+        record.put(keyBytes);
+        record.put(valueBytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, length);
+        record.putInt(4, (int) crc.getValue());
+        return record.flip();
+    }
+}
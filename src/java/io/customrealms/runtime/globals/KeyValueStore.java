@@ -0,0 +1,171 @@
+package io.customrealms.runtime.globals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import io.customrealms.runtime.Global;
+import io.customrealms.runtime.Logger;
+import io.customrealms.runtime.RuntimeExecutor;
+
+/**
+ * KeyValueStore is a persistent string key-value store for a bundle. All the entries are kept
+ * in memory, so reads are synchronous, and every change is appended to a log file on a virtual
+ * thread, with a promise that resolves once the change is on disk.
+ */
+public class KeyValueStore implements Global {
+    /**
+     * The runtime executor for this plugin.
+     */
+    private final RuntimeExecutor executor;
+
+    /**
+     * The log file of the store
+     */
+    private final File file;
+
+    /**
+     * The logger for failures to open the store
+     */
+    private final Logger logger;
+
+    /**
+     * The entries of the store, sorted by key. Changed only on the primary thread, but read by
+     * the compaction on a virtual thread.
+     */
+    private final ConcurrentSkipListMap<String, String> entries = new ConcurrentSkipListMap<>();
+
+    /**
+     * The log the changes are appended to, or null if the store couldn't be opened
+     */
+    private KeyValueLog log;
+
+    /**
+     * Constructs the store global
+     * @param executor the runtime executor
+     * @param file the log file of the store
+     * @param logger the logger for failures to open the store
+     */
+    public KeyValueStore(RuntimeExecutor executor, File file, Logger logger) {
+        this.executor = executor;
+        this.file = file;
+        this.logger = logger;
+    }
+
+    public void init(Value bindings) {
+        // Load the store from its log. The store stays unavailable if that fails, rather than
+        // appending to a log that wasn't read.
+        try {
+            this.log = new KeyValueLog(this.file.toPath(), this.entries);
+        } catch (IOException ex) {
+            this.logger.log(Logger.LogType.ERROR, "Failed to open key-value store " + this.file + ": " + ex.getMessage());
+        }
+
+        HashMap<String, Object> kv = new HashMap<>();
+        kv.put("get", (ProxyExecutable) this::jsGet);
+        kv.put("scan", (ProxyExecutable) this::jsScan);
+        kv.put("size", (ProxyExecutable) args -> this.entries.size());
+        kv.put("put", this.executor.promiseFunction("__kv.put", this::jsPut));
+        kv.put("delete", this.executor.promiseFunction("__kv.delete", this::jsDelete));
+        kv.put("compact", this.executor.promiseFunction("__kv.compact", this::jsCompact));
+
+        bindings.putMember("__kv", ProxyObject.fromMap(kv));
+    }
+
+    /**
+     * Releases all the values tying the runtime to the plugin
+     */
+    public void release() {
+        if (this.log != null) {
+            this.log.close();
+            this.log = null;
+        }
+    }
+
+    private Object jsGet(Value... args) {
+        return this.entries.get(args[0].asString());
+    }
+
+    private Object jsScan(Value... args) {
+        String prefix = args[0].asString();
+        long limit = args.length > 1 && !args[1].isNull() ? args[1].asLong() : Long.MAX_VALUE;
+
+        // Keys with the prefix are adjacent in the sorted map
+        List<Object> results = new ArrayList<>();
+        for (Map.Entry<String, String> entry : this.entries.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix) || results.size() >= limit) break;
+            results.add(ProxyArray.fromArray(entry.getKey(), entry.getValue()));
+        }
+        return ProxyArray.fromList(results);
+    }
+
+    private Supplier<Void> jsPut(Value... args) {
+        KeyValueLog log = this.requireLog();
+        String key = args[0].asString();
+        String value = args[1].asString();
+
+        // Apply the change in memory immediately, and queue it for the log in the same order
+        this.entries.put(key, value);
+        return this.append(log, log.queuePut(key, value));
+    }
+
+    private Supplier<Void> jsDelete(Value... args) {
+        KeyValueLog log = this.requireLog();
+        String key = args[0].asString();
+        if (this.entries.remove(key) == null) {
+            return () -> null;
+        }
+        return this.append(log, log.queueDelete(key));
+    }
+
+    private Supplier<Void> jsCompact(Value... args) {
+        KeyValueLog log = this.requireLog();
+        return () -> {
+            try {
+                log.compact(this.entries.entrySet());
+                return null;
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        };
+    }
+
+    /**
+     * Creates the operation that appends a queued change, and compacts the log once most of it
+     * is garbage
+     */
+    private Supplier<Void> append(KeyValueLog log, CompletableFuture<Void> appended) {
+        return () -> {
+            log.flush();
+            appended.join();
+            if (log.shouldCompact(this.entries.size())) {
+                try {
+                    log.compact(this.entries.entrySet());
+                } catch (IOException ex) {
+                    // The change is on disk already, and the next append tries again
+                    this.logger.log(Logger.LogType.WARNING, "Failed to compact key-value store " + this.file + ": " + ex.getMessage());
+                }
+            }
+            return null;
+        };
+    }
+
+    private KeyValueLog requireLog() {
+        if (this.log == null) {
+            throw new IllegalStateException("The key-value store is not available");
+        }
+        return this.log;
+    }
+}
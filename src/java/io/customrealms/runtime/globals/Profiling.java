@@ -0,0 +1,98 @@
+package io.customrealms.runtime.globals;
+
+import io.customrealms.runtime.Global;
+import io.customrealms.runtime.LeakTracker;
+import io.customrealms.runtime.Profiler;
+import io.customrealms.runtime.RuntimeExecutor;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class Profiling implements Global {
+    /**
+     * The runtime executor for this plugin.
+     */
+    private final RuntimeExecutor executor;
+
+    public Profiling(RuntimeExecutor executor) {
+        this.executor = executor;
+    }
+
+    public void init(Value bindings) {
+        HashMap<String, Object> profiler = new HashMap<>();
+        profiler.put("snapshot", (ProxyExecutable) this::jsSnapshot);
+        profiler.put("runtime", (ProxyExecutable) this::jsRuntime);
+        profiler.put("reset", (ProxyExecutable) this::jsReset);
+        profiler.put("leaks", (ProxyExecutable) this::jsLeaks);
+
+        bindings.putMember("__profiler", ProxyObject.fromMap(profiler));
+    }
+
+    /**
+     * Releases all the values tying the runtime to the plugin
+     */
+    public void release() {}
+
+    private Object jsSnapshot(Value... args) {
+        List<Object> entries = new ArrayList<>();
+        for (Profiler.Entry entry : this.executor.getProfiler().getEntries()) {
+            HashMap<String, Object> row = new HashMap<>();
+            row.put("site", entry.getSite());
+            row.put("count", entry.getCount());
+            row.put("totalMs", Profiling.toMillis(entry.getTotalNanos()));
+            row.put("meanMs", Profiling.toMillis(entry.getMeanNanos()));
+            row.put("p50Ms", Profiling.toMillis(entry.getPercentileNanos(50)));
+            row.put("p90Ms", Profiling.toMillis(entry.getPercentileNanos(90)));
+            row.put("p99Ms", Profiling.toMillis(entry.getPercentileNanos(99)));
+            row.put("maxMs", Profiling.toMillis(entry.getMaxNanos()));
+            entries.add(ProxyObject.fromMap(row));
+        }
+        return ProxyArray.fromList(entries);
+    }
+
+    private Object jsRuntime(Value... args) {
+        HashMap<String, Object> runtime = new HashMap<>();
+        runtime.put("pendingSettlements", this.executor.getPendingSettlements());
+        runtime.put("peakPendingSettlements", this.executor.getPeakPendingSettlements());
+        runtime.put("tickBudgetMs", Profiling.toMillis(this.executor.getTickBudget().getBudgetNanos()));
+        runtime.put("tickOverruns", this.executor.getTickBudget().getOverrunCount());
+        return ProxyObject.fromMap(runtime);
+    }
+
+    private Object jsLeaks(Value... args) {
+        LeakTracker tracker = this.executor.getLeakTracker();
+        tracker.refresh();
+
+        List<Object> entries = new ArrayList<>();
+        for (LeakTracker.Series series : tracker.getSeries()) {
+            entries.add(Profiling.toRow(series));
+        }
+        HashMap<String, Object> leaks = new HashMap<>();
+        leaks.put("entries", ProxyArray.fromList(entries));
+        return ProxyObject.fromMap(leaks);
+    }
+
+    private static Object toRow(LeakTracker.Series series) {
+        HashMap<String, Object> row = new HashMap<>();
+        row.put("kind", series.kind);
+        row.put("site", series.site);
+        row.put("count", series.getCurrent());
+        row.put("change", series.getChange());
+        row.put("growing", series.isGrowing());
+        return ProxyObject.fromMap(row);
+    }
+
+    private Object jsReset(Value... args) {
+        this.executor.getProfiler().reset();
+        return null;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -1,15 +1,21 @@
 package io.customrealms.runtime.globals;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 import org.graalvm.polyglot.Value;
 import org.graalvm.polyglot.proxy.ProxyExecutable;
 
 import io.customrealms.runtime.Global;
+import io.customrealms.runtime.Logger;
 import io.customrealms.runtime.RuntimeExecutor;
+import io.customrealms.runtime.TickBudget;
 
 public class Scheduler implements Global {
     /**
@@ -22,12 +28,45 @@ public class Scheduler implements Global {
      */
     private final RuntimeExecutor executor;
 
+    /**
+     * The logger for exceptions thrown by individual timers
+     */
+    private final Logger logger;
+
     private static final long TICKS_PER_SECOND = 20;
     private static final long MS_PER_TICK = 1000 / TICKS_PER_SECOND;
 
-    public Scheduler(JavaPlugin plugin, RuntimeExecutor executor) {
+    /**
+     * All the timers, immediates and intervals are kept on a single timer wheel
+     */
+    private final TimerWheel wheel = new TimerWheel();
+
+    /**
+     * The timers on the wheel, associated to their issued handle integer
+     */
+    private final HashMap<Integer, TimerWheel.Timer> timers = new HashMap<>();
+
+    /**
+     * The timers that are due, in order. Timers that didn't fit in the tick budget are carried
+     * over to the next tick at the front of the list.
+     */
+    private final ArrayList<TimerWheel.Timer> due = new ArrayList<>();
+
+    /**
+     * The next handle to issue for a timer. Handles are issued by the runtime, so they never
+     * collide with the task IDs of other plugins.
+     */
+    private int nextTimerHandle = 1;
+
+    /**
+     * The repeating Bukkit task driving the wheel, or null while there are no timers
+     */
+    private BukkitTask driver;
+
+    public Scheduler(JavaPlugin plugin, RuntimeExecutor executor, Logger logger) {
         this.plugin = plugin;
         this.executor = executor;
+        this.logger = logger;
     }
 
     public void init(Value bindings) {
@@ -39,60 +78,176 @@ public class Scheduler implements Global {
         bindings.putMember("clearImmediate", (ProxyExecutable) this::jsClearImmediate);
         bindings.putMember("queueMicrotask", (ProxyExecutable) this::jsQueueMicrotask);
         bindings.putMember("__main_thread", (ProxyExecutable) this::jsMainThread);
+        this.executor.getLeakTracker().track("timers", this::countTimers);
     }
 
     /**
      * Releases all the values tying the runtime to the plugin
      */
-    public void release() {}
+    public void release() {
+        // Stop driving the wheel
+        if (this.driver != null) {
+            this.driver.cancel();
+            this.driver = null;
+        }
+
+        // Drop all the timers
+        this.wheel.clear();
+        this.timers.clear();
+    }
 
     public Integer jsSetTimeout(Value... args) {
         Value handler = args[0];
-        Integer milliseconds = args[1].asInt();
-        long ticks = milliseconds / MS_PER_TICK;
-        Runnable task = () -> this.executor.executeSafely(() -> handler.executeVoid());
-        return Bukkit.getScheduler().scheduleSyncDelayedTask(this.plugin, task, ticks);
+        return this.addTimer("setTimeout", handler, Scheduler.toTicks(args), false);
     }
 
     public Void jsClearTimeout(Value... args) {
-        int handle = args[0].asInt();
-        Bukkit.getScheduler().cancelTask(handle);
+        this.cancelTimer(args);
         return null;
     }
 
     public Integer jsSetInterval(Value... args) {
         Value handler = args[0];
-        Integer milliseconds = args[1].asInt();
-        long ticks = milliseconds / MS_PER_TICK;
-        Runnable task = () -> this.executor.executeSafely(() -> handler.executeVoid());
-        return Bukkit.getScheduler().scheduleSyncRepeatingTask(this.plugin, task, ticks, ticks);
+        return this.addTimer("setInterval", handler, Scheduler.toTicks(args), true);
     }
 
     public Void jsClearInterval(Value... args) {
-        int handle = args[0].asInt();
-        Bukkit.getScheduler().cancelTask(handle);
+        this.cancelTimer(args);
         return null;
     }
 
     public Integer jsSetImmediate(Value... args) {
         Value handler = args[0];
-        Runnable task = () -> this.executor.executeSafely(() -> handler.executeVoid());
-        return Bukkit.getScheduler().scheduleSyncDelayedTask(this.plugin, task, 1);
+        return this.addTimer("setImmediate", handler, 1, false);
     }
 
     public Void jsClearImmediate(Value... args) {
-        int handle = args[0].asInt();
-        Bukkit.getScheduler().cancelTask(handle);
+        this.cancelTimer(args);
         return null;
     }
 
     public Void jsQueueMicrotask(Value... args) {
         Value handler = args[0];
-        Runnable task = () -> this.executor.executeSafely(() -> handler.executeVoid());
-        Bukkit.getScheduler().scheduleSyncDelayedTask(this.plugin, task);
+        this.executor.queueMicrotask(() -> handler.executeVoid());
         return null;
     }
 
+    /**
+     * Converts the millisecond delay argument of a timer function into ticks. Delays are rounded
+     * up, so a timer never fires before its delay has passed, and always fire on a later tick.
+     */
+    private static long toTicks(Value[] args) {
+        double milliseconds = args.length > 1 && args[1].isNumber() ? args[1].asDouble() : 0;
+        if (!(milliseconds > 0)) return 1;
+        return Math.max(1, (long) Math.ceil(milliseconds / MS_PER_TICK));
+    }
+
+    /**
+     * Adds a timer to the wheel, and starts driving the wheel if it isn't running yet
+     * @param kind the name of the function that created the timer
+     * @param handler the function to call when the timer is due
+     * @param ticks the number of ticks until the timer is due
+     * @param repeating whether the timer repeats with the same period
+     * @return the handle of the timer
+     */
+    private int addTimer(String kind, Value handler, long ticks, boolean repeating) {
+        int handle = this.nextTimerHandle++;
+        String site = kind + " at " + RuntimeExecutor.siteOf(handler);
+        TimerWheel.Timer timer = new TimerWheel.Timer(handle, handler, site, this.executor.getProfiler().entry(site), repeating ? ticks : 0);
+        this.wheel.schedule(timer, ticks);
+        this.timers.put(handle, timer);
+
+        if (this.driver == null) {
+            this.driver = Bukkit.getScheduler().runTaskTimer(this.plugin, this::tick, 1, 1);
+        }
+        return handle;
+    }
+
+    /**
+     * Counts the live timers by the site that created them
+     */
+    private Map<String, Integer> countTimers() {
+        HashMap<String, Integer> counts = new HashMap<>();
+        for (TimerWheel.Timer timer : this.timers.values()) {
+            counts.merge(timer.site, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Cancels the timer with the handle in the first argument, if it exists
+     */
+    private void cancelTimer(Value[] args) {
+        if (args.length == 0 || !args[0].fitsInInt()) return;
+        TimerWheel.Timer timer = this.timers.get(args[0].asInt());
+        if (timer == null) return;
+        this.cancel(timer);
+    }
+
+    /**
+     * Cancels a timer, including a repeating timer that has already been rescheduled
+     * @param timer the timer to cancel
+     */
+    private void cancel(TimerWheel.Timer timer) {
+        this.timers.remove(timer.handle);
+        timer.cancelled = true;
+        this.wheel.remove(timer);
+    }
+
+    /**
+     * Advances the wheel by one tick, and calls all the due timers within a single entry into
+     * the runtime
+     */
+    private void tick() {
+        this.wheel.advance(this.due);
+        if (!this.due.isEmpty()) {
+            this.executor.executeSafely("timers", this::fireDue);
+        }
+
+        // Stop driving the wheel while there are no timers
+        if (this.wheel.isEmpty() && this.due.isEmpty() && this.driver != null) {
+            this.driver.cancel();
+            this.driver = null;
+        }
+    }
+
+    /**
+     * Calls the due timers while the tick budget lasts, and leaves the rest for the next tick.
+     * At least one timer is called per tick, so timers always make progress.
+     */
+    private void fireDue() {
+        TickBudget budget = this.executor.getTickBudget();
+        int fired = 0;
+        for (; fired < this.due.size(); fired++) {
+            if (fired > 0 && budget.isExhausted()) break;
+
+            // Timers can be cancelled by an earlier timer or while they were carried over
+            TimerWheel.Timer timer = this.due.get(fired);
+            if (timer.cancelled) continue;
+
+            // Reschedule intervals before calling them, so they can clear themselves
+            if (timer.isRepeating()) {
+                this.wheel.schedule(timer, timer.period);
+            } else {
+                this.timers.remove(timer.handle);
+            }
+
+            // One failing timer must not prevent the others from running
+            long start = System.nanoTime();
+            try {
+                timer.callback.executeVoid();
+            } catch (Exception ex) {
+                if (!this.executor.getWatchdog().handleRunaway(timer.site, ex, () -> this.cancel(timer))) {
+                    this.logger.logUnhandledException(ex);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            timer.stats.record(elapsed);
+            budget.checkOverrun(timer.site, elapsed);
+        }
+        this.due.subList(0, fired).clear();
+    }
+
     public Object jsMainThread(Value... args) {
         if (args.length == 0 || !args[0].canExecute()) {
             throw new IllegalArgumentException("__main_thread requires a JavaScript function");
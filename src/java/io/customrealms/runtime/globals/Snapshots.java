@@ -0,0 +1,178 @@
+package io.customrealms.runtime.globals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.util.BoundingBox;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import io.customrealms.runtime.Global;
+
+/**
+ * Snapshots gathers the state of many players or entities in one call, and returns it as
+ * columns of typed arrays, so scripts scanning the whole server each tick don't have to cross
+ * into Java for every field of every player.
+ */
+public class Snapshots implements Global {
+    /**
+     * The flags packed into the flags column of the players snapshot
+     */
+    private static final byte FLAG_SNEAKING = 1;
+    private static final byte FLAG_SPRINTING = 2;
+    private static final byte FLAG_FLYING = 4;
+
+    /**
+     * Builds result objects from the packed columns
+     */
+    private Value assembler;
+
+    /**
+     * The ArrayBuffer constructor, which wraps the packed columns without copying
+     */
+    private Value arrayBufferCtor;
+
+    public void init(Value bindings) {
+        this.assembler = bindings.getContext().eval("js", Columns.ASSEMBLER);
+        this.arrayBufferCtor = bindings.getMember("ArrayBuffer");
+
+        HashMap<String, Object> snapshot = new HashMap<>();
+        snapshot.put("players", (ProxyExecutable) this::jsPlayers);
+        snapshot.put("entities", (ProxyExecutable) this::jsEntities);
+        bindings.putMember("__snapshot", ProxyObject.fromMap(snapshot));
+    }
+
+    /**
+     * Releases all the values tying the runtime to the plugin
+     */
+    public void release() {
+        this.assembler = null;
+        this.arrayBufferCtor = null;
+    }
+
+    private Object jsPlayers(Value... args) {
+        List<Player> players = new ArrayList<>(Bukkit.getOnlinePlayers());
+        int count = players.size();
+
+        Columns columns = new Columns(count);
+        int x = columns.add("x", Columns.Type.FLOAT64);
+        int y = columns.add("y", Columns.Type.FLOAT64);
+        int z = columns.add("z", Columns.Type.FLOAT64);
+        int health = columns.add("health", Columns.Type.FLOAT64);
+        int yaw = columns.add("yaw", Columns.Type.FLOAT32);
+        int pitch = columns.add("pitch", Columns.Type.FLOAT32);
+        int world = columns.add("world", Columns.Type.INT32);
+        int food = columns.add("food", Columns.Type.INT32);
+        int level = columns.add("level", Columns.Type.INT32);
+        int gameMode = columns.add("gameMode", Columns.Type.INT8);
+        int flags = columns.add("flags", Columns.Type.INT8);
+
+        // Worlds are stored as indexes into the worlds column
+        LinkedHashMap<String, Integer> worlds = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>(count);
+        List<String> uuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Player player = players.get(i);
+            Location location = player.getLocation();
+            names.add(player.getName());
+            uuids.add(player.getUniqueId().toString());
+            columns.putDouble(x, i, location.getX());
+            columns.putDouble(y, i, location.getY());
+            columns.putDouble(z, i, location.getZ());
+            columns.putDouble(health, i, player.getHealth());
+            columns.putFloat(yaw, i, location.getYaw());
+            columns.putFloat(pitch, i, location.getPitch());
+            columns.putInt(world, i, worlds.computeIfAbsent(player.getWorld().getName(), name -> worlds.size()));
+            columns.putInt(food, i, player.getFoodLevel());
+            columns.putInt(level, i, player.getLevel());
+            columns.putByte(gameMode, i, (byte) player.getGameMode().ordinal());
+            columns.putByte(flags, i, (byte) (
+                (player.isSneaking() ? FLAG_SNEAKING : 0)
+                | (player.isSprinting() ? FLAG_SPRINTING : 0)
+                | (player.isFlying() ? FLAG_FLYING : 0)
+            ));
+        }
+        columns.addStrings("names", names);
+        columns.addStrings("uuids", uuids);
+        columns.addStrings("worlds", worlds.keySet());
+        columns.addStrings("gameModes", Snapshots.enumNames(GameMode.values()));
+        return columns.build(this.assembler, this.arrayBufferCtor);
+    }
+
+    private Object jsEntities(Value... args) {
+        World world = Bukkit.getWorld(args[0].asString());
+        if (world == null) {
+            throw new IllegalArgumentException("Unknown world: " + args[0].asString());
+        }
+        BoundingBox box = new BoundingBox(
+            args[1].asDouble(), args[2].asDouble(), args[3].asDouble(),
+            args[4].asDouble(), args[5].asDouble(), args[6].asDouble()
+        );
+
+        // Optionally keep only the entity types given
+        Set<String> typeFilter = null;
+        if (args.length > 7 && args[7].hasArrayElements()) {
+            typeFilter = new HashSet<>();
+            for (long i = 0; i < args[7].getArraySize(); i++) {
+                typeFilter.add(args[7].getArrayElement(i).asString());
+            }
+        }
+        List<Entity> entities = new ArrayList<>();
+        for (Entity entity : world.getNearbyEntities(box)) {
+            if (typeFilter == null || typeFilter.contains(entity.getType().name())) {
+                entities.add(entity);
+            }
+        }
+        int count = entities.size();
+
+        Columns columns = new Columns(count);
+        int x = columns.add("x", Columns.Type.FLOAT64);
+        int y = columns.add("y", Columns.Type.FLOAT64);
+        int z = columns.add("z", Columns.Type.FLOAT64);
+        int health = columns.add("health", Columns.Type.FLOAT64);
+        int yaw = columns.add("yaw", Columns.Type.FLOAT32);
+        int pitch = columns.add("pitch", Columns.Type.FLOAT32);
+        int id = columns.add("ids", Columns.Type.INT32);
+        int type = columns.add("type", Columns.Type.INT32);
+
+        // Types are stored as indexes into the types column
+        LinkedHashMap<String, Integer> types = new LinkedHashMap<>();
+        List<String> uuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Entity entity = entities.get(i);
+            Location location = entity.getLocation();
+            uuids.add(entity.getUniqueId().toString());
+            columns.putDouble(x, i, location.getX());
+            columns.putDouble(y, i, location.getY());
+            columns.putDouble(z, i, location.getZ());
+            columns.putDouble(health, i, entity instanceof LivingEntity ? ((LivingEntity) entity).getHealth() : Double.NaN);
+            columns.putFloat(yaw, i, location.getYaw());
+            columns.putFloat(pitch, i, location.getPitch());
+            columns.putInt(id, i, entity.getEntityId());
+            columns.putInt(type, i, types.computeIfAbsent(entity.getType().name(), name -> types.size()));
+        }
+        columns.addStrings("uuids", uuids);
+        columns.addStrings("types", types.keySet());
+        return columns.build(this.assembler, this.arrayBufferCtor);
+    }
+
+    private static List<String> enumNames(Enum<?>[] values) {
+        List<String> names = new ArrayList<>(values.length);
+        for (Enum<?> value : values) {
+            names.add(value.name());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,155 @@
+package io.customrealms.runtime.globals;
+
+import io.customrealms.runtime.Profiler;
+import org.graalvm.polyglot.Value;
+
+import java.util.List;
+
+/**
+ * TimerWheel is a hashed timer wheel measured in server ticks. Timers are kept in doubly-linked
+ * lists, one per slot of the wheel, so scheduling and cancelling a timer are constant time.
+ * Timers further away than one revolution of the wheel simply stay in their slot until their
+ * deadline is reached.
+ */
+class TimerWheel {
+    /**
+     * A timer scheduled on the wheel
+     */
+    static final class Timer {
+        final int handle;
+        final Value callback;
+        final String site;
+        final Profiler.Entry stats;
+        final long period;
+        long deadline;
+        boolean cancelled;
+        private Timer prev;
+        private Timer next;
+        private int slot = -1;
+
+        Timer(int handle, Value callback, String site, Profiler.Entry stats, long period) {
+            this.handle = handle;
+            this.callback = callback;
+            this.site = site;
+            this.stats = stats;
+            this.period = period;
+        }
+
+        boolean isRepeating() {
+            return this.period > 0;
+        }
+    }
+
+    /**
+     * The number of slots in the wheel. Must be a power of two.
+     */
+    private static final int SLOT_COUNT = 512;
+
+    /**
+     * The head of the list of timers in each slot
+     */
+    private final Timer[] slots = new Timer[SLOT_COUNT];
+
+    /**
+     * The current tick of the wheel
+     */
+    private long tick = 0;
+
+    /**
+     * The number of timers on the wheel
+     */
+    private int size = 0;
+
+    /**
+     * Schedules a timer to become due after a number of ticks
+     * @param timer the timer to schedule
+     * @param delay the number of ticks from now, at least 1
+     */
+    void schedule(Timer timer, long delay) {
+        timer.deadline = this.tick + Math.max(1, delay);
+        int slot = (int) (timer.deadline & (SLOT_COUNT - 1));
+
+        // Append to the end of the slot, so timers with the same deadline keep their order
+        Timer head = this.slots[slot];
+        if (head == null) {
+            timer.prev = timer;
+            timer.next = null;
+            this.slots[slot] = timer;
+        } else {
+            Timer tail = head.prev;
+            tail.next = timer;
+            timer.prev = tail;
+            timer.next = null;
+            head.prev = timer;
+        }
+        timer.slot = slot;
+        this.size++;
+    }
+
+    /**
+     * Removes a timer from the wheel, if it is on it
+     * @param timer the timer to remove
+     */
+    void remove(Timer timer) {
+        if (timer.slot < 0) return;
+        Timer head = this.slots[timer.slot];
+        if (timer == head) {
+            this.slots[timer.slot] = timer.next;
+            if (timer.next != null) timer.next.prev = timer.prev;
+        } else {
+            timer.prev.next = timer.next;
+            if (timer.next != null) {
+                timer.next.prev = timer.prev;
+            } else {
+                head.prev = timer.prev;
+            }
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.slot = -1;
+        this.size--;
+    }
+
+    /**
+     * Advances the wheel by one tick, and removes all the timers that became due
+     * @param due the list to add the due timers to, in deadline order
+     */
+    void advance(List<Timer> due) {
+        this.tick++;
+        Timer timer = this.slots[(int) (this.tick & (SLOT_COUNT - 1))];
+        while (timer != null) {
+            Timer next = timer.next;
+            if (timer.deadline <= this.tick) {
+                this.remove(timer);
+                due.add(timer);
+            }
+            timer = next;
+        }
+    }
+
+    /**
+     * Checks if there are no timers on the wheel
+     * @return true if the wheel is empty
+     */
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Removes all the timers from the wheel
+     */
+    void clear() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            Timer timer = this.slots[i];
+            while (timer != null) {
+                Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                timer.slot = -1;
+                timer = next;
+            }
+            this.slots[i] = null;
+        }
+        this.size = 0;
+    }
+}
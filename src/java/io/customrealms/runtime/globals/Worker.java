@@ -0,0 +1,230 @@
+package io.customrealms.runtime.globals;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+
+import io.customrealms.runtime.Logger;
+import io.customrealms.runtime.Runtime;
+import io.customrealms.runtime.StructuredClone;
+
+/**
+ * Worker runs a module in its own context on its own thread. Messages sent to the worker are
+ * handled one at a time by the module's onmessage function, and its return value, or the value
+ * its promise resolves to, is the reply. The worker can also post messages back at any time.
+ */
+class Worker {
+    /**
+     * A message waiting to be handled by the worker
+     */
+    private static final class Job {
+        final Object message;
+        final CompletableFuture<Object> reply;
+
+        Job(Object message, CompletableFuture<Object> reply) {
+            this.message = message;
+            this.reply = reply;
+        }
+    }
+
+    /**
+     * Queued to stop the worker once the messages before it are handled
+     */
+    private static final Job STOP = new Job(null, null);
+
+    /**
+     * The name of the module the worker runs
+     */
+    final String name;
+
+    /**
+     * The messages waiting to be handled
+     */
+    private final LinkedBlockingQueue<Job> inbox = new LinkedBlockingQueue<>();
+
+    /**
+     * The thread running the worker
+     */
+    private final Thread thread;
+
+    /**
+     * The context of the worker, once created
+     */
+    private volatile Context context;
+
+    /**
+     * Whether the worker has been terminated
+     */
+    private volatile boolean terminated = false;
+
+    /**
+     * Starts a worker
+     * @param name the name of the module
+     * @param source the source of the module
+     * @param engine the shared engine to create the context on
+     * @param logger the logger for the worker's console and errors
+     * @param virtual whether to run on a virtual thread rather than a platform thread
+     * @param onMessage receives the copies of the messages posted by the worker, on its thread
+     * @param onExit called on the worker's thread when it stops without being terminated, such as
+     *               when its module fails
+     */
+    Worker(String name, Source source, Engine engine, Logger logger, boolean virtual, Consumer<Object> onMessage, Runnable onExit) {
+        this.name = name;
+        Thread.Builder builder = virtual ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+        this.thread = builder.name("customrealms-worker-" + name).start(() -> this.run(source, engine, logger, onMessage, onExit));
+    }
+
+    /**
+     * Sends a message to the worker, and waits for its reply
+     * @param message the copy of the message
+     * @return completes with the copy of the reply
+     */
+    CompletableFuture<Object> call(Object message) {
+        CompletableFuture<Object> reply = new CompletableFuture<>();
+        this.send(new Job(message, reply));
+        return reply;
+    }
+
+    /**
+     * Sends a message to the worker, without waiting for a reply
+     * @param message the copy of the message
+     */
+    void post(Object message) {
+        this.send(new Job(message, null));
+    }
+
+    private void send(Job job) {
+        if (this.terminated) {
+            Worker.fail(job, "Worker " + this.name + " has been terminated");
+            return;
+        }
+        this.inbox.add(job);
+    }
+
+    /**
+     * Stops the worker, cancelling the message being handled, and failing the messages waiting
+     */
+    void terminate() {
+        if (this.terminated) return;
+        this.terminated = true;
+        this.inbox.add(STOP);
+        Context context = this.context;
+        if (context != null) {
+            context.close(true);
+        }
+    }
+
+    private void run(Source source, Engine engine, Logger logger, Consumer<Object> onMessage, Runnable onExit) {
+        try (Context context = Runtime.createWorkerContext(engine)) {
+            this.context = context;
+            if (this.terminated) return;
+
+            // Give the module a console, and a way to post messages back
+            Value bindings = context.getBindings("js");
+            new Console(logger).init(bindings);
+            bindings.putMember("postMessage", (ProxyExecutable) args -> {
+                onMessage.accept(StructuredClone.toJava(args.length > 0 ? args[0] : null));
+                return null;
+            });
+            StructuredClone clone = new StructuredClone(context);
+            context.eval(source);
+
+            // Handle the messages one at a time, until stopped
+            while (true) {
+                Job job = this.inbox.take();
+                if (job == STOP) break;
+                this.handle(bindings, clone, job, logger);
+            }
+        } catch (PolyglotException ex) {
+            if (!ex.isCancelled()) {
+                logger.log(Logger.LogType.ERROR, "Worker " + this.name + " failed: " + ex.getMessage());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            boolean exited = !this.terminated;
+            this.terminated = true;
+            this.context = null;
+
+            // Fail the messages that will never be handled
+            ArrayList<Job> remaining = new ArrayList<>();
+            this.inbox.drainTo(remaining);
+            for (Job job : remaining) {
+                Worker.fail(job, "Worker " + this.name + " has been terminated");
+            }
+            if (exited) {
+                onExit.run();
+            }
+        }
+    }
+
+    private void handle(Value bindings, StructuredClone clone, Job job, Logger logger) {
+        Value handler = bindings.getMember("onmessage");
+        if (handler == null || !handler.canExecute()) {
+            Worker.fail(job, "Worker " + this.name + " has no onmessage function");
+            return;
+        }
+
+        try {
+            Value result = handler.execute(clone.toJs(job.message));
+            if (job.reply == null) return;
+
+            // An async handler's promise settles before the call returns, unless it waits
+            // for something that never happens within the worker
+            if (result.hasMember("then") && result.getMember("then").canExecute()) {
+                Object[] value = new Object[1];
+                String[] error = new String[1];
+                boolean[] settled = new boolean[1];
+                result.invokeMember(
+                    "then",
+                    (ProxyExecutable) args -> {
+                        try {
+                            value[0] = StructuredClone.toJava(args.length > 0 ? args[0] : null);
+                        } catch (IllegalArgumentException ex) {
+                            error[0] = ex.getMessage();
+                        }
+                        settled[0] = true;
+                        return null;
+                    },
+                    (ProxyExecutable) args -> {
+                        error[0] = args.length > 0 ? String.valueOf(args[0]) : "Rejected";
+                        settled[0] = true;
+                        return null;
+                    }
+                );
+                if (!settled[0]) {
+                    Worker.fail(job, "Worker " + this.name + " returned a promise that didn't settle");
+                } else if (error[0] != null) {
+                    Worker.fail(job, error[0]);
+                } else {
+                    job.reply.complete(value[0]);
+                }
+                return;
+            }
+            job.reply.complete(StructuredClone.toJava(result));
+        } catch (PolyglotException ex) {
+            if (ex.isCancelled()) throw ex;
+            if (job.reply != null) {
+                Worker.fail(job, ex.getMessage());
+            } else {
+                logger.log(Logger.LogType.ERROR, "Worker " + this.name + ": " + ex.getMessage());
+            }
+        } catch (IllegalArgumentException ex) {
+            Worker.fail(job, ex.getMessage());
+        }
+    }
+
+    private static void fail(Job job, String message) {
+        if (job.reply != null) {
+            job.reply.completeExceptionally(new IllegalStateException(message));
+        }
+    }
+}
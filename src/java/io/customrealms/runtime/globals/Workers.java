@@ -0,0 +1,185 @@
+package io.customrealms.runtime.globals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import io.customrealms.resource.Resource;
+import io.customrealms.runtime.Global;
+import io.customrealms.runtime.Logger;
+import io.customrealms.runtime.RuntimeExecutor;
+import io.customrealms.runtime.StructuredClone;
+
+/**
+ * Workers lets scripts run CPU-heavy code off the primary thread, in worker contexts that have
+ * no access to the server. Worker modules are loaded by name from the workers directory in the
+ * plugin data folder, or from the plugin JAR.
+ */
+public class Workers implements Global {
+    /**
+     * The directory of the worker modules, in the data folder and in the JAR
+     */
+    private static final String WORKERS_DIRECTORY = "workers";
+
+    /**
+     * The allowed worker module names, which can't escape the workers directory
+     */
+    private static final Pattern MODULE_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    /**
+     * The plugin the workers belong to
+     */
+    private final JavaPlugin plugin;
+
+    /**
+     * The runtime executor for this plugin.
+     */
+    private final RuntimeExecutor executor;
+
+    /**
+     * The shared engine the worker contexts are created on
+     */
+    private final Engine engine;
+
+    /**
+     * The logger for the workers' consoles and errors
+     */
+    private final Logger logger;
+
+    /**
+     * The sources of the worker modules loaded so far, by name
+     */
+    private final HashMap<String, Source> sources = new HashMap<>();
+
+    /**
+     * The running workers. Only accessed on the primary thread.
+     */
+    private final HashSet<Worker> workers = new HashSet<>();
+
+    /**
+     * Rebuilds the messages from workers in the runtime's context
+     */
+    private StructuredClone clone;
+
+    public Workers(JavaPlugin plugin, RuntimeExecutor executor, Engine engine, Logger logger) {
+        this.plugin = plugin;
+        this.executor = executor;
+        this.engine = engine;
+        this.logger = logger;
+    }
+
+    public void init(Value bindings) {
+        this.clone = new StructuredClone(bindings.getContext());
+
+        HashMap<String, Object> workers = new HashMap<>();
+        workers.put("spawn", (ProxyExecutable) this::jsSpawn);
+        bindings.putMember("__workers", ProxyObject.fromMap(workers));
+        this.executor.getLeakTracker().track("workers", this::countWorkers);
+    }
+
+    /**
+     * Counts the running workers by module name
+     */
+    private Map<String, Integer> countWorkers() {
+        HashMap<String, Integer> counts = new HashMap<>();
+        for (Worker worker : this.workers) {
+            counts.merge(worker.name, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Releases all the values tying the runtime to the plugin
+     */
+    public void release() {
+        for (Worker worker : this.workers) {
+            worker.terminate();
+        }
+        this.workers.clear();
+        this.clone = null;
+    }
+
+    private Object jsSpawn(Value... args) {
+        String name = args[0].asString();
+        boolean virtual = args.length > 1 && args[1].hasMembers()
+            && args[1].hasMember("virtual") && args[1].getMember("virtual").asBoolean();
+        Source source = this.getSource(name);
+
+        // Messages posted by the worker are delivered to the onmessage function of its object
+        HashMap<String, Object> object = new HashMap<>();
+        String site = "worker " + name + " message";
+        Worker[] spawned = new Worker[1];
+        Worker worker = new Worker(name, source, this.engine, this.logger, virtual, message ->
+            this.executor.executeSafely(site, () -> {
+                // Messages still in flight when the runtime was released have nowhere to go
+                if (this.clone == null) return;
+                Object handler = object.get("onmessage");
+                if (handler instanceof Value && ((Value) handler).canExecute()) {
+                    ((Value) handler).executeVoid(this.clone.toJs(message));
+                }
+            }),
+            // A worker whose module failed is no longer running
+            () -> this.executor.executeSafely("worker " + name + " exit", () -> this.workers.remove(spawned[0]))
+        );
+        spawned[0] = worker;
+        this.workers.add(worker);
+
+        object.put("onmessage", null);
+        object.put("call", this.executor.promiseFunction("__workers.call", callArgs -> {
+            Object message = StructuredClone.toJava(callArgs.length > 0 ? callArgs[0] : null);
+            return () -> worker.call(message).join();
+        }, result -> this.clone.toJs(result)));
+        object.put("postMessage", (ProxyExecutable) postArgs -> {
+            worker.post(StructuredClone.toJava(postArgs.length > 0 ? postArgs[0] : null));
+            return null;
+        });
+        object.put("terminate", (ProxyExecutable) terminateArgs -> {
+            worker.terminate();
+            this.workers.remove(worker);
+            return null;
+        });
+        return ProxyObject.fromMap(object);
+    }
+
+    /**
+     * Gets the source of a worker module, from the data folder or the JAR
+     */
+    private Source getSource(String name) {
+        if (!MODULE_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid worker module name: " + name);
+        }
+        Source cached = this.sources.get(name);
+        if (cached != null) return cached;
+
+        String filename = name + ".js";
+        String code = null;
+        File file = new File(new File(this.plugin.getDataFolder(), WORKERS_DIRECTORY), filename);
+        if (file.isFile()) {
+            try {
+                code = java.nio.file.Files.readString(file.toPath(), StandardCharsets.UTF_8);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed to read worker module " + name + ": " + ex.getMessage());
+            }
+        } else {
+            code = Resource.read(WORKERS_DIRECTORY + "/" + filename);
+        }
+        if (code == null) {
+            throw new IllegalArgumentException("Worker module not found: " + name);
+        }
+
+        Source source = Source.newBuilder("js", code, WORKERS_DIRECTORY + "/" + filename).buildLiteral();
+        this.sources.put(name, source);
+        return source;
+    }
+}
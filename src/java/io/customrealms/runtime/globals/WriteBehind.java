@@ -0,0 +1,228 @@
+package io.customrealms.runtime.globals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * WriteBehind delays file writes, and merges the writes to the same file within the delay into
+ * a single write of the latest content. Every merged write completes when that write does.
+ *
+ * The writes to a file are performed in the order they were called in, whether they are
+ * delayed or not, so that an earlier call can never overwrite the content of a later one.
+ */
+class WriteBehind {
+    /**
+     * Writes the content of a file
+     */
+    interface Writer {
+        void write(Path path, String content, boolean atomic) throws IOException;
+    }
+
+    /**
+     * Performs the writes
+     */
+    private final Writer writer;
+
+    /**
+     * The place of a write in the order of the writes to its file
+     */
+    private static final class Turn {
+        /**
+         * Completes once the write called before this one is done, or null if there is none
+         */
+        final CompletableFuture<Void> previous;
+
+        /**
+         * Completes once this write is done, successfully or not
+         */
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Turn(CompletableFuture<Void> previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * Waits for the write called before this one, whether or not it succeeded
+         */
+        void await() {
+            if (this.previous != null) {
+                this.previous.handle((result, error) -> null).join();
+            }
+        }
+    }
+
+    /**
+     * A write waiting to be flushed
+     */
+    private static final class Pending {
+        String content;
+        boolean atomic;
+        final Turn turn;
+        final CompletableFuture<Void> flushed = new CompletableFuture<>();
+
+        Pending(String content, boolean atomic, Turn turn) {
+            this.content = content;
+            this.atomic = atomic;
+            this.turn = turn;
+        }
+    }
+
+    /**
+     * The writes waiting to be flushed, by file. Guarded by the WriteBehind instance.
+     */
+    private final HashMap<Path, Pending> pending = new HashMap<>();
+
+    /**
+     * The turn of the last write called for each file that isn't done yet. Guarded by the
+     * WriteBehind instance.
+     */
+    private final HashMap<Path, Turn> lastTurns = new HashMap<>();
+
+    WriteBehind(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Queues a write, or merges it into the write already queued for the file. Must be called
+     * in the order the writes are made, since that is the order they are performed in.
+     * @param path the file to write
+     * @param content the content to write
+     * @param atomic whether the file must be replaced atomically
+     * @param delayMillis how long to wait for more writes before flushing, or 0 to write right
+     *                    away, replacing the write queued for the file
+     * @return the operation, which waits for the write to be done
+     */
+    Supplier<Void> write(Path path, String content, boolean atomic, long delayMillis) {
+        if (delayMillis <= 0) {
+            return this.writeNow(path, content, atomic);
+        }
+
+        Pending created;
+        synchronized (this) {
+            Pending existing = this.pending.get(path);
+            if (existing != null) {
+                existing.content = content;
+                existing.atomic |= atomic;
+                return existing.flushed::join;
+            }
+            created = new Pending(content, atomic, this.nextTurn(path));
+            this.pending.put(path, created);
+        }
+
+        // The first write of the batch waits out the delay and flushes it
+        return () -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ex) {
+                // Writing on an interrupted thread would fail, so the write is left queued for
+                // flushAll, which runs on the primary thread
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            this.flush(path, created);
+            return created.flushed.join();
+        };
+    }
+
+    /**
+     * Takes the turn of a write that isn't delayed. The write queued for the file, if any, is
+     * replaced by it, and completes when it does.
+     */
+    private Supplier<Void> writeNow(Path path, String content, boolean atomic) {
+        Pending superseded;
+        Turn turn;
+        synchronized (this) {
+            // The new turn comes after the superseded one, which ends once the write before it
+            // is done, so the new write still waits for that one
+            superseded = this.pending.remove(path);
+            turn = this.nextTurn(path);
+            if (superseded != null) {
+                this.skip(path, superseded.turn);
+            }
+        }
+
+        return () -> {
+            turn.await();
+            try {
+                this.writer.write(path, content, atomic);
+                if (superseded != null) superseded.flushed.complete(null);
+                return null;
+            } catch (IOException ex) {
+                if (superseded != null) superseded.flushed.completeExceptionally(ex);
+                throw new CompletionException(ex);
+            } finally {
+                this.finish(path, turn);
+            }
+        };
+    }
+
+    /**
+     * Flushes all the queued writes on the calling thread
+     */
+    void flushAll() {
+        ArrayList<Map.Entry<Path, Pending>> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(this.pending.entrySet());
+        }
+        for (Map.Entry<Path, Pending> entry : entries) {
+            this.flush(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Writes a queued write once the writes called before it are done, unless it has already
+     * been flushed or superseded
+     */
+    private void flush(Path path, Pending write) {
+        // Once out of the queue, the write no longer changes
+        synchronized (this) {
+            if (!this.pending.remove(path, write)) return;
+        }
+        write.turn.await();
+        try {
+            this.writer.write(path, write.content, write.atomic);
+            write.flushed.complete(null);
+        } catch (IOException ex) {
+            write.flushed.completeExceptionally(ex);
+        } finally {
+            this.finish(path, write.turn);
+        }
+    }
+
+    /**
+     * Takes the next turn for a file. Must be called while synchronized on the instance.
+     */
+    private Turn nextTurn(Path path) {
+        Turn last = this.lastTurns.get(path);
+        Turn turn = new Turn(last == null ? null : last.done);
+        this.lastTurns.put(path, turn);
+        return turn;
+    }
+
+    /**
+     * Ends a turn, letting the next write to the file go ahead
+     */
+    private void finish(Path path, Turn turn) {
+        synchronized (this) {
+            this.lastTurns.remove(path, turn);
+        }
+        turn.done.complete(null);
+    }
+
+    /**
+     * Ends the turn of a write that was superseded, once the write called before it is done
+     */
+    private void skip(Path path, Turn turn) {
+        if (turn.previous == null) {
+            this.finish(path, turn);
+        } else {
+            turn.previous.whenComplete((result, error) -> this.finish(path, turn));
+        }
+    }
+}
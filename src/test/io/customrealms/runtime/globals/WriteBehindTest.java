@@ -0,0 +1,78 @@
+package io.customrealms.runtime.globals;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+class WriteBehindTest {
+    private static final Path PATH = Path.of("data.json").toAbsolutePath();
+
+    /**
+     * The contents written, in the order they were written
+     */
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+
+    private final WriteBehind writeBehind = new WriteBehind((path, content, atomic) -> this.written.add(content));
+
+    @Test
+    void directWriteRunningLateDoesNotOverwriteLaterDelayedWrite() throws Exception {
+        // Both writes are called before either operation runs, as with the promise functions
+        Supplier<Void> direct = this.writeBehind.write(PATH, "A", false, 0);
+        Supplier<Void> delayed = this.writeBehind.write(PATH, "B", false, 50);
+
+        // The delayed write's operation starts first, and the direct one only runs afterwards
+        CompletableFuture<Void> delayedDone = CompletableFuture.supplyAsync(delayed);
+        Thread.sleep(100);
+        assertFalse(delayedDone.isDone(), "the delayed write must wait for the direct write called before it");
+        direct.get();
+        delayedDone.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("A", "B"), this.written);
+    }
+
+    @Test
+    void directWriteReplacesEarlierDelayedWrite() throws Exception {
+        Supplier<Void> delayed = this.writeBehind.write(PATH, "A", false, 50);
+        Supplier<Void> direct = this.writeBehind.write(PATH, "B", false, 0);
+
+        CompletableFuture<Void> delayedDone = CompletableFuture.supplyAsync(delayed);
+        direct.get();
+        delayedDone.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("B"), this.written);
+    }
+
+    @Test
+    void directWritesKeepCallOrder() throws Exception {
+        Supplier<Void> first = this.writeBehind.write(PATH, "A", false, 0);
+        Supplier<Void> second = this.writeBehind.write(PATH, "B", false, 0);
+
+        CompletableFuture<Void> secondDone = CompletableFuture.supplyAsync(second);
+        Thread.sleep(50);
+        first.get();
+        secondDone.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("A", "B"), this.written);
+    }
+
+    @Test
+    void delayedWritesMergeIntoLatestContent() throws Exception {
+        Supplier<Void> first = this.writeBehind.write(PATH, "A", false, 50);
+        Supplier<Void> second = this.writeBehind.write(PATH, "B", false, 50);
+
+        CompletableFuture<Void> secondDone = CompletableFuture.supplyAsync(second);
+        first.get();
+        secondDone.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("B"), this.written);
+    }
+}
@@ -19,20 +19,101 @@ declare namespace Java {
  */
 declare const Plugin: org.bukkit.plugin.java.JavaPlugin;
 
+/**
+ * Options for registering an event handler
+ */
+declare interface EventRegisterOptions {
+	/**
+	 * The Bukkit priority the handler runs at. Defaults to "NORMAL".
+	 */
+	priority?: 'LOWEST' | 'LOW' | 'NORMAL' | 'HIGH' | 'HIGHEST' | 'MONITOR';
+
+	/**
+	 * If true, the handler is not called for events that have already been cancelled. Defaults to false.
+	 */
+	ignoreCancelled?: boolean;
+
+	/**
+	 * A filter evaluated in Java before the handler is called, so that events that don't match
+	 * never enter the JavaScript runtime.
+	 */
+	filter?: EventFilter;
+
+	/**
+	 * Delivers the events to the handler at most once per interval, keeping only the latest event for
+	 * each key. Coalesced events are delivered after Bukkit has processed them, so they cannot be cancelled.
+	 */
+	coalesce?: EventCoalesceOptions;
+}
+
+/**
+ * Options for coalescing high-frequency events
+ */
+declare interface EventCoalesceOptions {
+	/**
+	 * The property events are coalesced by. Defaults to "player".
+	 */
+	key?: 'player' | 'entity' | 'world' | 'none';
+
+	/**
+	 * The number of ticks between deliveries. Defaults to 1.
+	 */
+	interval?: number;
+
+	/**
+	 * If true, the handler is called once per delivery with an array of all the coalesced events,
+	 * instead of once per event. Defaults to false.
+	 */
+	batch?: boolean;
+}
+
+/**
+ * A declarative event filter. All the given conditions must match. A condition on a property
+ * that the event doesn't have never matches.
+ */
+declare interface EventFilter {
+	/**
+	 * The material names of the block the event is about (block events and PlayerInteractEvent)
+	 */
+	material?: string | string[];
+
+	/**
+	 * The names of the world the event happened in
+	 */
+	world?: string | string[];
+
+	/**
+	 * The names or UUIDs of the player responsible for the event
+	 */
+	player?: string | string[];
+
+	/**
+	 * If true, only matches PlayerMoveEvents where the player moved into a different block
+	 */
+	blockChanged?: boolean;
+}
+
 /**
  * Registers an event handler, responding to a specific type of event as defined by the Java classpath
  * to the corresponding Event class in the Bukkit API. This function returns a handle number that can
  * be used to unregister the event listener.
  *
  * The event value passed to the handler is the raw Java.Value object for the underlying Bukkit event
- * object.
+ * object. Handlers for the same event class and priority are called in registration order.
  *
  * @param event_classpath the Java classpath to the Bukkit event being listened for
  * @param handler the handler function that will be triggered each time the event occurs
+ * @param options the priority and cancellation options for the handler
  */
 declare function __events_register<T extends org.bukkit.event.Event>(
 	event_classpath: string,
-	handler: (event: T) => void
+	handler: (events: T[]) => void,
+	options: EventRegisterOptions & { coalesce: EventCoalesceOptions & { batch: true } }
+): number;
+declare function __events_register<T extends org.bukkit.event.Event>(
+	event_classpath: string,
+	handler: (event: T) => void,
+	options?: EventRegisterOptions
 ): number;
 
 /**
@@ -56,6 +137,62 @@ declare function __commands_register(
 	) => boolean
 ): boolean;
 
+/**
+ * A node of the argument tree of a command defined at runtime: either a literal word, or a typed argument
+ */
+interface CommandArgumentNode {
+	/** The literal word matched by this node */
+	literal?: string;
+	/** The name of the argument in the parsed arguments */
+	name?: string;
+	/** The type of the argument, which defaults to "string". A "greedy" argument takes the rest of the input. */
+	type?: "string" | "greedy" | "int" | "number" | "boolean" | "choice" | "player" | "world";
+	/** The bounds of "int" and "number" arguments */
+	min?: number;
+	max?: number;
+	/** The values of "choice" arguments */
+	values?: string[];
+	/** The name of the cached suggestion set completing the argument, see __commands_suggestions */
+	suggest?: string;
+	/** The permission needed to use this node and the nodes below it */
+	permission?: string;
+	/** Called when the input ends at this node */
+	executes?: (
+		sender: org.bukkit.command.CommandSender,
+		args: { [name: string]: any },
+		label: string
+	) => void;
+	/** The nodes that can follow this one. Literals are tried first. */
+	children?: CommandArgumentNode[];
+}
+
+/**
+ * The definition of a command defined at runtime
+ */
+interface CommandDefinition extends CommandArgumentNode {
+	name: string;
+	description?: string;
+	usage?: string;
+	aliases?: string[];
+}
+
+/**
+ * Defines a command at runtime, without it being in the plugin.yml file. The input is parsed against the argument tree
+ * before entering the runtime: invalid input is answered with a usage message, and tab completion is answered from the
+ * tree and the cached suggestion sets. Defining a command again replaces the earlier definition.
+ * @param definition the command and its argument tree
+ * @returns false if another command already has the name, in which case the command is only reachable as
+ * /<plugin>:<name>
+ */
+declare function __commands_define(definition: CommandDefinition): boolean;
+
+/**
+ * Replaces a cached suggestion set used for tab completion. Call this whenever the underlying data changes.
+ * @param name the name of the suggestion set
+ * @param values the suggestions, or null to remove the set
+ */
+declare function __commands_suggestions(name: string, values: string[] | null): void;
+
 declare namespace console {
 	function log(...args: any[]): void;
 	function warn(...args: any[]): void;
@@ -63,7 +200,8 @@ declare namespace console {
 }
 
 /**
- * Sets a timeout
+ * Sets a timeout. Timers run on server ticks, so the delay is rounded up to the next multiple of 50ms,
+ * and a timeout always runs on a later tick.
  * @param callback the function to run after the delay
  * @param delay the delay in milliseconds
  * @returns the timeout ID
@@ -103,7 +241,8 @@ declare function setImmediate(callback: () => void): number;
 declare function clearImmediate(immediate: number): void;
 
 /**
- * Queues a microtask to run as soon as possible.
+ * Queues a microtask to run as soon as possible, right after the current callback completes and
+ * within the same server tick.
  * @param callback the function to run as a microtask
  */
 declare function queueMicrotask(callback: () => void): void;
@@ -131,5 +270,427 @@ declare namespace __fs {
 
 	function mkdir(path: string, recursive: boolean): Promise<boolean>;
 
-	function write(path: string, data: string): Promise<void>;
+	/**
+	 * Writes text to a file as UTF-8, replacing its content
+	 */
+	function write(path: string, data: string, options?: FileWriteOptions): Promise<void>;
+
+	/**
+	 * Gets the size of a file in bytes, or null if it doesn't exist
+	 */
+	function size(path: string): Promise<number | null>;
+
+	/**
+	 * Reads a range of bytes from a file, or null if it doesn't exist. Without a length, the
+	 * rest of the file is read.
+	 */
+	function readBytes(path: string, offset?: number, length?: number): Promise<ArrayBuffer | null>;
+
+	/**
+	 * Writes bytes to a file. Strings are encoded as UTF-8. Without an offset the file is
+	 * replaced, otherwise the bytes overwrite the file from that offset.
+	 */
+	function writeBytes(path: string, data: ArrayBuffer | ArrayBufferView | string, offset?: number): Promise<void>;
+
+	/**
+	 * Maps a range of a file into memory, without copying it, or null if it doesn't exist.
+	 * The buffer is read-only: writing to it throws a TypeError.
+	 */
+	function map(path: string, offset?: number, length?: number): Promise<ArrayBuffer | null>;
+
+	/**
+	 * Opens a file for streaming: "r" to read, "w" to replace, or "a" to append. Defaults to "r".
+	 */
+	function open(path: string, mode?: "r" | "w" | "a"): Promise<FileHandle>;
+
+	/**
+	 * Gets the counters of the cache used by read and readdir, enabled with the file-cache-mb
+	 * setting of the plugin configuration
+	 */
+	function cacheStats(): {
+		enabled: boolean;
+		hits: number;
+		misses: number;
+		evictions: number;
+		entries: number;
+		bytes: number;
+	};
+}
+
+declare interface FileWriteOptions {
+	/**
+	 * Write to a temporary file that is synced to disk and renamed over the target, so a crash
+	 * never leaves a partially written file behind
+	 */
+	atomic?: boolean;
+
+	/**
+	 * Delay the write by this many milliseconds. Writes to the same file within the delay are
+	 * merged into a single write of the latest content, and their promises resolve together.
+	 * Delayed writes are flushed when the plugin is disabled.
+	 */
+	writeBehind?: number;
+}
+
+/**
+ * An open file. Operations run in the order they are called, even when they aren't awaited.
+ */
+declare interface FileHandle {
+	/**
+	 * Reads the next chunk of the file, up to 64 KiB by default, or null at the end of the file
+	 */
+	read(length?: number): Promise<ArrayBuffer | null>;
+
+	/**
+	 * Writes bytes at the current position of the file. Strings are encoded as UTF-8.
+	 */
+	write(data: ArrayBuffer | ArrayBufferView | string): Promise<void>;
+
+	/**
+	 * Gets the current size of the file in bytes
+	 */
+	size(): Promise<number>;
+
+	/**
+	 * Closes the file, after the operations called before it
+	 */
+	close(): Promise<void>;
+}
+
+/**
+ * A persistent string key-value store for the plugin. Reads are served from memory, and changes
+ * are visible immediately, with a promise that resolves once the change is on disk.
+ */
+declare namespace __kv {
+	/**
+	 * Gets the value of a key, or null if it isn't set
+	 */
+	function get(key: string): string | null;
+
+	/**
+	 * Gets the entries whose keys start with a prefix, ordered by key
+	 */
+	function scan(prefix: string, limit?: number): [string, string][];
+
+	/**
+	 * Gets the number of keys in the store
+	 */
+	function size(): number;
+
+	function put(key: string, value: string): Promise<void>;
+
+	function delete(key: string): Promise<void>;
+
+	/**
+	 * Rewrites the log file without the overwritten and deleted entries. This also happens
+	 * automatically once most of the log is overwritten or deleted entries.
+	 */
+	function compact(): Promise<void>;
+}
+
+/**
+ * A worker running a module from the workers directory of the plugin data folder, or of the
+ * plugin JAR, in its own context on its own thread. The module has console and postMessage,
+ * but no access to Java or the server. It handles messages with a global onmessage function,
+ * whose return value, or the value its promise resolves to, is the reply to call().
+ *
+ * Messages and replies are structured clones: primitives, arrays, plain objects, dates and
+ * ArrayBuffers are copied, and functions within objects are left out. Other objects, such as
+ * maps, sets, typed arrays and class instances, are rejected.
+ */
+declare interface Worker {
+	/**
+	 * Sends a message to the worker, and resolves with its reply
+	 */
+	call(message: any): Promise<any>;
+
+	/**
+	 * Sends a message to the worker, ignoring the reply
+	 */
+	postMessage(message: any): void;
+
+	/**
+	 * Receives the messages posted by the worker, on the main thread
+	 */
+	onmessage: ((message: any) => void) | null;
+
+	/**
+	 * Stops the worker, rejecting the calls it hasn't replied to
+	 */
+	terminate(): void;
+}
+
+declare namespace __workers {
+	/**
+	 * Starts a worker running the named module. Workers run on platform threads by default,
+	 * or on virtual threads with the virtual option.
+	 */
+	function spawn(name: string, options?: { virtual?: boolean }): Worker;
+}
+
+/**
+ * The state of all the online players, as one array per field, indexed by player
+ */
+declare interface PlayersSnapshot {
+	count: number;
+	names: string[];
+	uuids: string[];
+	x: Float64Array;
+	y: Float64Array;
+	z: Float64Array;
+	health: Float64Array;
+	yaw: Float32Array;
+	pitch: Float32Array;
+	/**
+	 * Indexes into worlds
+	 */
+	world: Int32Array;
+	worlds: string[];
+	food: Int32Array;
+	level: Int32Array;
+	/**
+	 * Indexes into gameModes
+	 */
+	gameMode: Int8Array;
+	gameModes: string[];
+	/**
+	 * Bit flags: 1 sneaking, 2 sprinting, 4 flying
+	 */
+	flags: Int8Array;
+}
+
+/**
+ * The state of the entities in a region, as one array per field, indexed by entity
+ */
+declare interface EntitiesSnapshot {
+	count: number;
+	ids: Int32Array;
+	uuids: string[];
+	x: Float64Array;
+	y: Float64Array;
+	z: Float64Array;
+	/**
+	 * NaN for entities that have no health
+	 */
+	health: Float64Array;
+	yaw: Float32Array;
+	pitch: Float32Array;
+	/**
+	 * Indexes into types
+	 */
+	type: Int32Array;
+	types: string[];
+}
+
+declare namespace __snapshot {
+	function players(): PlayersSnapshot;
+
+	/**
+	 * Gets the entities within a box in a world, optionally only those of the given entity types
+	 */
+	function entities(
+		world: string,
+		minX: number,
+		minY: number,
+		minZ: number,
+		maxX: number,
+		maxY: number,
+		maxZ: number,
+		types?: string[],
+	): EntitiesSnapshot;
+}
+
+declare interface BlockFillOptions {
+	/**
+	 * Only replace blocks of these materials, e.g. ["AIR"]
+	 */
+	mask?: string[];
+
+	/**
+	 * Apply physics to the changed blocks. Defaults to false.
+	 */
+	physics?: boolean;
+
+	/**
+	 * Visit at most this many blocks per tick for this edit. It can't exceed the
+	 * block-edit-budget setting of the plugin configuration.
+	 */
+	blocksPerTick?: number;
+
+	/**
+	 * Called after each tick the edit made progress in
+	 */
+	onProgress?: (changed: number, visited: number, total: number) => void;
+}
+
+declare interface BlockFillResult {
+	total: number;
+	visited: number;
+	changed: number;
+	ticks: number;
+}
+
+declare namespace __blocks {
+	/**
+	 * Fills the region between two corners with a pattern: a material, a list of materials
+	 * picked at random, or materials with weights, e.g. { STONE: 3, ANDESITE: 1 }. The region
+	 * is edited one chunk at a time over as many ticks as needed, and edits run in the order
+	 * they were started.
+	 */
+	function fill(
+		world: string,
+		x1: number,
+		y1: number,
+		z1: number,
+		x2: number,
+		y2: number,
+		z2: number,
+		pattern: string | string[] | Record<string, number>,
+		options?: BlockFillOptions,
+	): Promise<BlockFillResult>;
+}
+
+declare interface ChunkQueryOptions {
+	/**
+	 * Load the chunks of the region that aren't loaded. By default they are left out, and
+	 * counted in skippedChunks. Loading, or generating, a chunk is expensive, so they are
+	 * loaded 4 per tick across all the queries, and the promise settles once the last one is
+	 * captured. A box of 1024 unloaded chunks takes over 12 seconds.
+	 */
+	load?: boolean;
+}
+
+/**
+ * Queries over a box of blocks. The loaded chunks of the box are captured when the function is
+ * called, and scanned off the main thread, so the results reflect the world at the time of the
+ * call, except for the chunks loaded with the load option.
+ * A box may overlap at most 1024 chunks, larger boxes are rejected.
+ */
+declare namespace __chunks {
+	/**
+	 * Finds the blocks of the given materials, as x, y, z triples in coords
+	 */
+	function find(
+		world: string,
+		x1: number,
+		y1: number,
+		z1: number,
+		x2: number,
+		y2: number,
+		z2: number,
+		materials: string[],
+		options?: ChunkQueryOptions & { limit?: number },
+	): Promise<{ count: number; coords: Int32Array; truncated: boolean; skippedChunks: number }>;
+
+	/**
+	 * Counts the blocks by material, optionally only the given materials
+	 */
+	function count(
+		world: string,
+		x1: number,
+		y1: number,
+		z1: number,
+		x2: number,
+		y2: number,
+		z2: number,
+		materials?: string[] | null,
+		options?: ChunkQueryOptions,
+	): Promise<{ counts: Record<string, number>; skippedChunks: number }>;
+
+	/**
+	 * Finds the smallest box containing all the blocks of the given materials
+	 */
+	function bounds(
+		world: string,
+		x1: number,
+		y1: number,
+		z1: number,
+		x2: number,
+		y2: number,
+		z2: number,
+		materials: string[],
+		options?: ChunkQueryOptions,
+	): Promise<{
+		found: boolean;
+		minX?: number;
+		minY?: number;
+		minZ?: number;
+		maxX?: number;
+		maxY?: number;
+		maxZ?: number;
+		skippedChunks: number;
+	}>;
+
+	/**
+	 * Counts the blocks by biome
+	 */
+	function biomes(
+		world: string,
+		x1: number,
+		y1: number,
+		z1: number,
+		x2: number,
+		y2: number,
+		z2: number,
+		options?: ChunkQueryOptions,
+	): Promise<{ counts: Record<string, number>; skippedChunks: number }>;
+}
+
+/**
+ * The invocation statistics of a registration site in the runtime, such as an event handler, a
+ * command, or the location a timer was created at.
+ */
+declare interface ProfilerEntry {
+	site: string;
+	count: number;
+	totalMs: number;
+	meanMs: number;
+	p50Ms: number;
+	p90Ms: number;
+	p99Ms: number;
+	maxMs: number;
+}
+
+/**
+ * The live count of one kind of registration from one site, such as the event handlers registered at a line, over the
+ * recent samples
+ */
+declare interface LeakEntry {
+	kind: string;
+	site: string;
+	count: number;
+	/** The change between the oldest and the latest of the recent samples */
+	change: number;
+	/** Whether the count grew over each of the last samples */
+	growing: boolean;
+}
+
+declare namespace __profiler {
+	/**
+	 * Gets the statistics of all the registration sites that have been invoked, ordered by total time
+	 */
+	function snapshot(): ProfilerEntry[];
+
+	/**
+	 * Samples the live event handlers, timers, pending promises, workers and file handles by the site that created
+	 * them, largest first. The heap is shared by all the bundles, and is shown by /customrealms leaks.
+	 */
+	function leaks(): {
+		entries: LeakEntry[];
+	};
+
+	/**
+	 * Gets the state of the runtime's queues and tick budget
+	 */
+	function runtime(): {
+		pendingSettlements: number;
+		peakPendingSettlements: number;
+		tickBudgetMs: number;
+		tickOverruns: number;
+	};
+
+	/**
+	 * Clears the statistics of all the registration sites
+	 */
+	function reset(): void;
 }